@@ -0,0 +1,90 @@
+package org.granite.rest.benchmarks;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.granite.rest.model.RequestContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of building a RequestContext: splitting the path, decoding the query string and reading
+ * the body. The request is reused, RequestContext only takes read-only views of it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestContextBenchmark {
+
+  @Param({
+      "/items",
+      "/items/12345",
+      "/items?_sortField=name&_perPage=50&_page=3&category=category-7",
+      "/api/v2/accounts/abc/items/12345/tags?expand=true&fields=id%2Cname%2Cprice"})
+  public String uri;
+
+  @Param({"0", "1024"})
+  public int bodySize;
+
+  private FullHttpRequest httpRequest;
+
+  @Setup
+  public void setUp() {
+    final byte[] body = new byte[bodySize];
+
+    for (int i = 0; i < bodySize; i++) {
+      body[i] = (byte) ('a' + i % 26);
+    }
+
+    httpRequest = new DefaultFullHttpRequest(
+        HttpVersion.HTTP_1_1,
+        bodySize == 0 ? HttpMethod.GET : HttpMethod.POST,
+        uri,
+        Unpooled.wrappedBuffer(body));
+
+    httpRequest.headers()
+        .set(HttpHeaderNames.HOST, "localhost")
+        .set(HttpHeaderNames.CONTENT_LENGTH, bodySize)
+        .set(HttpHeaderNames.CONTENT_TYPE, "application/json");
+  }
+
+  @TearDown
+  public void tearDown() {
+    httpRequest.release();
+  }
+
+  @Benchmark
+  public RequestContext construct() {
+    return new RequestContext(httpRequest, ByteBufAllocator.DEFAULT);
+  }
+
+  @Benchmark
+  public void constructAndRead(final Blackhole blackhole) {
+    final RequestContext requestContext = new RequestContext(httpRequest, ByteBufAllocator.DEFAULT);
+
+    blackhole.consume(requestContext.getRequestPath());
+    blackhole.consume(requestContext.getQueryStringParameters());
+    blackhole.consume(requestContext.getRequestBody());
+  }
+
+  @Benchmark
+  public String readBody() {
+    return new RequestContext(httpRequest, ByteBufAllocator.DEFAULT)
+        .getRequestBodyBuffer()
+        .toString(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,113 @@
+package org.granite.rest.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.ReferenceCountUtil;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.granite.rest.handler.serialzation.JsonSerializer;
+import org.granite.rest.metrics.ServiceMetrics;
+import org.granite.rest.service.InboundRequestHandler;
+import org.granite.rest.service.RequestBodyAggregator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A whole request through the same handlers RESTChannelInitializer installs for HTTP/1.1, from the
+ * request bytes to the encoded response bytes, on an EmbeddedChannel. The connection is kept
+ * alive across invocations like a client reusing it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RoundTripBenchmark {
+
+  @Param({"getOne", "getMany", "post"})
+  public String request;
+
+  private EmbeddedChannel channel;
+  private ByteBuf requestBytes;
+
+  @Setup
+  public void setUp() {
+    final BenchmarkItemProvider itemProvider = new BenchmarkItemProvider(
+        BenchmarkItem.generate(1000, 42L));
+    final BenchmarkRequestHandler requestHandler = new BenchmarkRequestHandler(itemProvider);
+
+    final InboundRequestHandler inboundRequestHandler =
+        new InboundRequestHandler(requestContext -> requestHandler) {
+          @Override
+          protected void logRequest(
+              final ChannelHandlerContext channelHandlerContext,
+              final HttpRequest httpRequest) {
+          }
+        }.withServiceMetrics(new ServiceMetrics());
+
+    channel = new EmbeddedChannel(
+        new HttpServerCodec(),
+        new RequestBodyAggregator(1048576, inboundRequestHandler::getRequestBodyPolicy),
+        new ChunkedWriteHandler(),
+        inboundRequestHandler);
+
+    requestBytes = Unpooled.unreleasableBuffer(Unpooled.copiedBuffer(
+        createRequest(itemProvider), StandardCharsets.US_ASCII));
+  }
+
+  @TearDown
+  public void tearDown() {
+    channel.finishAndReleaseAll();
+  }
+
+  @Benchmark
+  public int roundTrip() {
+    channel.writeInbound(requestBytes.duplicate());
+
+    int responseBytes = 0;
+    Object message;
+
+    while ((message = channel.readOutbound()) != null) {
+      if (message instanceof ByteBuf) {
+        responseBytes += ((ByteBuf) message).readableBytes();
+      }
+
+      ReferenceCountUtil.release(message);
+    }
+
+    if (responseBytes == 0) {
+      throw new IllegalStateException("No response for " + request);
+    }
+
+    return responseBytes;
+  }
+
+  private String createRequest(final BenchmarkItemProvider itemProvider) {
+    switch (request) {
+      case "getOne":
+        return "GET /items/42 HTTP/1.1\r\nHost: localhost\r\nAccept: application/json\r\n\r\n";
+      case "getMany":
+        return "GET /items?_perPage=20&_page=2 HTTP/1.1\r\nHost: localhost\r\n"
+            + "Accept: application/json\r\n\r\n";
+      case "post":
+        final String body = new String(
+            new JsonSerializer<>(BenchmarkItem.TYPE).serializeOne(itemProvider.getOne(7, null)),
+            StandardCharsets.UTF_8);
+
+        return "POST /items HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/json\r\n"
+            + "Content-Length: " + body.length() + "\r\n\r\n" + body;
+      default:
+        throw new IllegalArgumentException("Unknown request: " + request);
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package org.granite.rest.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.granite.rest.handler.serialzation.ContentTypeSerializer;
+import org.granite.rest.handler.serialzation.JsonSerializer;
+import org.granite.rest.handler.serialzation.MsgPackSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * JSON against MessagePack for the serializer calls the handlers make, both to byte arrays and to
+ * pooled buffers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializerBenchmark {
+
+  @Param({"json", "msgpack"})
+  public String format;
+
+  @Param({"10", "1000"})
+  public int itemCount;
+
+  private final PooledByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+
+  private ContentTypeSerializer<BenchmarkItem> serializer;
+  private BenchmarkItem item;
+  private List<BenchmarkItem> items;
+  private byte[] serializedItem;
+
+  @Setup
+  public void setUp() {
+    serializer = "json".equals(format)
+        ? new JsonSerializer<>(BenchmarkItem.TYPE)
+        : new MsgPackSerializer<>(BenchmarkItem.TYPE);
+
+    items = BenchmarkItem.generate(itemCount, 42L);
+    item = items.get(0);
+    serializedItem = serializer.serializeOne(item);
+  }
+
+  @Benchmark
+  public byte[] serializeOne() {
+    return serializer.serializeOne(item);
+  }
+
+  @Benchmark
+  public byte[] serializeMany() {
+    return serializer.serializeMany(items);
+  }
+
+  @Benchmark
+  public int serializeManyToBuffer() {
+    final ByteBuf buffer = serializer.serializeMany(allocator, items);
+
+    try {
+      return buffer.readableBytes();
+    } finally {
+      buffer.release();
+    }
+  }
+
+  @Benchmark
+  public BenchmarkItem deserializeOne() {
+    return serializer.deserializeOne(serializedItem);
+  }
+}
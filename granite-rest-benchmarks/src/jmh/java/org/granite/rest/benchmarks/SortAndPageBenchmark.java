@@ -0,0 +1,58 @@
+package org.granite.rest.benchmarks;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.granite.rest.model.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * sortAndPage over unsorted collections, for the first page, a deep page and the whole list,
+ * ordered by the value comparator or by a named field.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SortAndPageBenchmark {
+
+  @Param({"100", "10000", "100000"})
+  public int itemCount;
+
+  // "all" asks for the whole collection
+  @Param({"1", "50", "all"})
+  public String page;
+
+  @Param({"", "name"})
+  public String sortField;
+
+  private BenchmarkRequestHandler requestHandler;
+  private List<BenchmarkItem> items;
+  private Query query;
+
+  @Setup
+  public void setUp() {
+    items = BenchmarkItem.generate(itemCount, 42L);
+
+    requestHandler = new BenchmarkRequestHandler(new BenchmarkItemProvider(items));
+
+    query = new Query(
+        ImmutableMap.of(),
+        sortField.isEmpty() ? null : sortField,
+        false,
+        "all".equals(page) ? null : Integer.valueOf(page),
+        20,
+        null);
+  }
+
+  @Benchmark
+  public List<BenchmarkItem> sortAndPage() {
+    return requestHandler.sortAndPageItems(items, query);
+  }
+}
@@ -0,0 +1,65 @@
+package org.granite.rest.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A small item with the mix of field types a typical resource has.
+ */
+public class BenchmarkItem {
+
+  public final static TypeReference<BenchmarkItem> TYPE = new TypeReference<BenchmarkItem>() {
+  };
+
+  public int id;
+  public String name;
+  public String category;
+  public double price;
+  public long updated;
+  public boolean active;
+  public List<String> tags;
+
+  public int getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public double getPrice() {
+    return price;
+  }
+
+  // The same seed always gives the same items, in shuffled id order
+  public static List<BenchmarkItem> generate(final int count, final long seed) {
+    final Random random = new Random(seed);
+    final ArrayList<BenchmarkItem> items = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+      final BenchmarkItem item = new BenchmarkItem();
+
+      item.id = i;
+      item.name = "item-" + Integer.toString(random.nextInt(1 << 24), 36);
+      item.category = "category-" + random.nextInt(16);
+      item.price = random.nextInt(100000) / 100.0;
+      item.updated = 1500000000000L + random.nextInt(Integer.MAX_VALUE);
+      item.active = random.nextBoolean();
+      item.tags = List.of("tag-" + random.nextInt(8), "tag-" + random.nextInt(8));
+
+      items.add(item);
+    }
+
+    for (int i = count - 1; i > 0; i--) {
+      final int j = random.nextInt(i + 1);
+      final BenchmarkItem swapped = items.get(i);
+
+      items.set(i, items.get(j));
+      items.set(j, swapped);
+    }
+
+    return items;
+  }
+}
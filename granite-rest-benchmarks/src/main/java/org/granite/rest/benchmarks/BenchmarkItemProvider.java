@@ -0,0 +1,100 @@
+package org.granite.rest.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import org.granite.rest.handler.SubListResponse;
+import org.granite.rest.model.ItemProvider;
+import org.granite.rest.model.RequestContext;
+import org.granite.rest.model.UpdateResult;
+
+/**
+ * Serves a fixed list of items and accepts every write without storing it, so benchmarks measure
+ * the request pipeline rather than the provider. A latency can be set to stand in for a backing
+ * store, each call then blocks its thread for that long.
+ */
+public class BenchmarkItemProvider implements ItemProvider<Integer, BenchmarkItem> {
+
+  private final List<BenchmarkItem> items;
+  private final BenchmarkItem[] itemsById;
+  private long latencyNanos = 0L;
+
+  public BenchmarkItemProvider(final List<BenchmarkItem> items) {
+    this.items = items;
+    this.itemsById = new BenchmarkItem[items.size()];
+
+    for (BenchmarkItem item : items) {
+      itemsById[item.id] = item;
+    }
+  }
+
+  public BenchmarkItemProvider withLatencyMicros(final long latencyMicros) {
+    this.latencyNanos = latencyMicros * 1000L;
+    return this;
+  }
+
+  @Override
+  public BenchmarkItem getOne(final Integer key, final RequestContext requestContext) {
+    simulateLatency();
+
+    return key >= 0 && key < itemsById.length ? itemsById[key] : null;
+  }
+
+  @Override
+  public SubListResponse<BenchmarkItem> getMany(
+      final Map<String, String> propertyFilter,
+      final RequestContext requestContext) {
+    simulateLatency();
+
+    return new SubListResponse<>(items.size(), items);
+  }
+
+  @Override
+  public UpdateResult<Integer> insert(
+      final BenchmarkItem item,
+      final RequestContext requestContext) {
+    simulateLatency();
+
+    return new UpdateResult<>(item.id, false, true, null);
+  }
+
+  @Override
+  public UpdateResult<Integer> update(
+      final Integer key,
+      final BenchmarkItem item,
+      final RequestContext requestContext) {
+    simulateLatency();
+
+    return new UpdateResult<>(key, true, true, null);
+  }
+
+  @Override
+  public UpdateResult<Integer> delete(final Integer key, final RequestContext requestContext) {
+    simulateLatency();
+
+    return new UpdateResult<>(key, true, true, null);
+  }
+
+  @Override
+  public TypeReference<BenchmarkItem> getItemClass() {
+    return BenchmarkItem.TYPE;
+  }
+
+  public int size() {
+    return itemsById.length;
+  }
+
+  private void simulateLatency() {
+    if (latencyNanos <= 0L) {
+      return;
+    }
+
+    final long deadline = System.nanoTime() + latencyNanos;
+    long remaining;
+
+    while ((remaining = deadline - System.nanoTime()) > 0L) {
+      LockSupport.parkNanos(remaining);
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package org.granite.rest.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import java.util.Comparator;
+import java.util.List;
+import org.granite.rest.handler.SimpleRESTRequestHandler;
+import org.granite.rest.handler.serialzation.MsgPackSerializer;
+import org.granite.rest.model.Query;
+import org.granite.rest.model.RequestContext;
+
+/**
+ * Routes /items and /items/{id} to a BenchmarkItemProvider, in JSON or MessagePack.
+ */
+public class BenchmarkRequestHandler extends SimpleRESTRequestHandler<Integer, BenchmarkItem> {
+
+  public BenchmarkRequestHandler(final BenchmarkItemProvider itemProvider) {
+    super(itemProvider, ImmutableList.of(new MsgPackSerializer<>(BenchmarkItem.TYPE)));
+  }
+
+  @Override
+  protected Comparator<BenchmarkItem> getValueComparator() {
+    return Comparator.comparingInt(BenchmarkItem::getId);
+  }
+
+  @Override
+  protected Integer keyFromRequestPath(final List<String> requestPath) {
+    return requestPath.size() > 1 ? Integer.valueOf(requestPath.get(1)) : null;
+  }
+
+  @Override
+  protected void doHealthCheck(final RequestContext requestContext) {
+  }
+
+  @Override
+  public String getRootPath() {
+    return "items";
+  }
+
+  // sortAndPage is only visible to handlers
+  public List<BenchmarkItem> sortAndPageItems(final List<BenchmarkItem> items,
+      final Query query) {
+    return sortAndPage(items, query);
+  }
+}
@@ -0,0 +1,197 @@
+package org.granite.rest.benchmarks;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.granite.log.LogTools;
+
+/**
+ * Keep-alive HTTP/1.1 connections that requests are spread over round robin. Requests are
+ * pipelined rather than waiting for a free connection, so a slow server queues work instead of
+ * slowing the sender down. Latency is taken from the time a request was scheduled to be sent, not
+ * from when it was written.
+ */
+public class LoadClient implements AutoCloseable {
+
+  private final static int MAX_RESPONSE_SIZE = 64 * 1048576;
+
+  private final NioEventLoopGroup group;
+  private final List<Connection> connections;
+  private final AtomicLong outstanding = new AtomicLong();
+  private long nextConnection = 0L;
+
+  public LoadClient(final String host, final int port, final int connectionCount)
+      throws InterruptedException {
+    checkNotNull(host, "host");
+    checkArgument(connectionCount > 0, "connectionCount must be a positive number");
+
+    this.group = new NioEventLoopGroup(Math.min(connectionCount,
+        Runtime.getRuntime().availableProcessors()));
+    this.connections = new ArrayList<>(connectionCount);
+
+    final Bootstrap bootstrap = new Bootstrap()
+        .group(group)
+        .channel(NioSocketChannel.class)
+        .option(ChannelOption.TCP_NODELAY, true)
+        .handler(new ChannelInitializer<SocketChannel>() {
+          @Override
+          protected void initChannel(final SocketChannel ch) {
+            ch.pipeline()
+                .addLast(new HttpClientCodec())
+                .addLast(new HttpObjectAggregator(MAX_RESPONSE_SIZE))
+                .addLast(new Connection());
+          }
+        });
+
+    for (int i = 0; i < connectionCount; i++) {
+      final Channel channel = bootstrap.connect(host, port).sync().channel();
+
+      connections.add(channel.pipeline().get(Connection.class));
+    }
+  }
+
+  // Called from the single scheduling thread
+  public void send(
+      final LoadTarget target,
+      final long scheduledNanos,
+      final boolean measured) {
+    final Connection connection = connections.get((int) (nextConnection++ % connections.size()));
+    final FullHttpRequest request = target.createRequest();
+
+    outstanding.incrementAndGet();
+
+    connection.channel.eventLoop().execute(() ->
+        connection.write(new PendingRequest(target, scheduledNanos, measured), request));
+  }
+
+  public long getOutstanding() {
+    return outstanding.get();
+  }
+
+  // Waits for the responses still in flight, returns how many did not arrive
+  public long awaitOutstanding(final long timeout, final TimeUnit unit)
+      throws InterruptedException {
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+    while (outstanding.get() > 0 && System.nanoTime() < deadline) {
+      Thread.sleep(10L);
+    }
+
+    return outstanding.get();
+  }
+
+  @Override
+  public void close() {
+    for (Connection connection : connections) {
+      connection.channel.close();
+    }
+
+    group.shutdownGracefully(0L, 1L, TimeUnit.SECONDS).syncUninterruptibly();
+  }
+
+  private static class PendingRequest {
+
+    private final LoadTarget target;
+    private final long scheduledNanos;
+    private final boolean measured;
+
+    private PendingRequest(
+        final LoadTarget target,
+        final long scheduledNanos,
+        final boolean measured) {
+      this.target = target;
+      this.scheduledNanos = scheduledNanos;
+      this.measured = measured;
+    }
+  }
+
+  // Responses come back in request order, so the oldest pending request is
+  // the one being answered. Only touched on the channel's event loop.
+  private class Connection extends SimpleChannelInboundHandler<FullHttpResponse> {
+
+    private final ArrayDeque<PendingRequest> pending = new ArrayDeque<>();
+    private Channel channel;
+
+    @Override
+    public void handlerAdded(final ChannelHandlerContext ctx) {
+      channel = ctx.channel();
+    }
+
+    private void write(final PendingRequest pendingRequest, final FullHttpRequest request) {
+      if (!channel.isActive()) {
+        request.release();
+        fail(pendingRequest);
+        return;
+      }
+
+      pending.add(pendingRequest);
+
+      channel.writeAndFlush(request);
+    }
+
+    @Override
+    protected void channelRead0(final ChannelHandlerContext ctx, final FullHttpResponse response) {
+      final PendingRequest pendingRequest = pending.poll();
+
+      if (pendingRequest == null) {
+        return;
+      }
+
+      outstanding.decrementAndGet();
+
+      if (!pendingRequest.measured) {
+        return;
+      }
+
+      if (response.status().code() < 400) {
+        pendingRequest.target.recordSuccess(System.nanoTime() - pendingRequest.scheduledNanos);
+      } else {
+        pendingRequest.target.recordFailure();
+      }
+    }
+
+    @Override
+    public void channelInactive(final ChannelHandlerContext ctx) throws Exception {
+      PendingRequest pendingRequest;
+
+      while ((pendingRequest = pending.poll()) != null) {
+        fail(pendingRequest);
+      }
+
+      super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) {
+      LogTools.warn("Load client connection failed: {0}", cause.getMessage());
+
+      ctx.close();
+    }
+
+    private void fail(final PendingRequest pendingRequest) {
+      outstanding.decrementAndGet();
+
+      if (pendingRequest.measured) {
+        pendingRequest.target.recordFailure();
+      }
+    }
+  }
+}
@@ -0,0 +1,204 @@
+package org.granite.rest.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpRequest;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.granite.base.ExceptionTools;
+import org.granite.log.LogTools;
+import org.granite.rest.accesslog.AccessLog;
+import org.granite.rest.accesslog.FileAccessLogSink;
+import org.granite.rest.metrics.HistogramSnapshot;
+import org.granite.rest.service.DispatchExecutor;
+import org.granite.rest.service.InboundRequestHandler;
+import org.granite.rest.service.RESTChannelInitializer;
+import org.granite.rest.service.RESTService;
+
+/**
+ * Boots a RESTService on a loopback port in front of a BenchmarkItemProvider and sends it
+ * requests at a constant rate (an open model). Requests go out on schedule whether or not earlier
+ * ones were answered, and each is timed from its scheduled send time, so a stalled server shows up
+ * in the latencies instead of lowering the load (coordinated omission). Throughput and latency
+ * percentiles are reported per endpoint and content type.
+ */
+public class LoadGenerator {
+
+  private final static double NANOS_PER_MILLI = 1_000_000.0;
+  private final static int MAX_PENDING_DISPATCH = 100000;
+
+  private final LoadGeneratorOptions options;
+
+  public LoadGenerator(final LoadGeneratorOptions options) {
+    this.options = options;
+  }
+
+  public static void main(final String[] args) throws Exception {
+    new LoadGenerator(LoadGeneratorOptions.parse(args)).run();
+
+    System.exit(0);
+  }
+
+  public void run() throws Exception {
+    final int port = options.getPort() == 0 ? findFreePort() : options.getPort();
+
+    final BenchmarkItemProvider itemProvider = new BenchmarkItemProvider(
+        BenchmarkItem.generate(options.getItems(), 42L))
+        .withLatencyMicros(options.getProviderLatencyMicros());
+
+    final ImmutableList<LoadTarget> targets = createTargets(itemProvider);
+
+    final RESTService service = new RESTService(port, createChannelInitializer(itemProvider))
+        .withAccessLog(options.getAccessLog().isEmpty()
+            ? null
+            : new AccessLog(new FileAccessLogSink(Paths.get(options.getAccessLog()))));
+
+    final Thread serviceThread = new Thread(service::start, "granite-rest-load-service");
+    serviceThread.setDaemon(true);
+    serviceThread.start();
+
+    LogTools.info("Load test: {0}", options.toString());
+
+    try (LoadClient client = connect(port)) {
+      final long maxLagNanos = sendRequests(client, targets);
+
+      final long unanswered = client.awaitOutstanding(10L, TimeUnit.SECONDS);
+
+      printReport(targets, maxLagNanos, unanswered);
+    } finally {
+      service.shutdown();
+    }
+  }
+
+  private ImmutableList<LoadTarget> createTargets(final BenchmarkItemProvider itemProvider) {
+    final ImmutableList.Builder<LoadTarget> targets = ImmutableList.builder();
+
+    for (String endpoint : options.getEndpoints()) {
+      for (String contentType : options.getContentTypes()) {
+        targets.add(new LoadTarget(endpoint, contentType, itemProvider));
+      }
+    }
+
+    return targets.build();
+  }
+
+  private RESTChannelInitializer createChannelInitializer(
+      final BenchmarkItemProvider itemProvider) {
+    final BenchmarkRequestHandler requestHandler = new BenchmarkRequestHandler(itemProvider);
+
+    final DispatchExecutor dispatchExecutor = options.getDispatchThreads() == 0
+        ? null
+        : DispatchExecutor.fixedPool(options.getDispatchThreads(), MAX_PENDING_DISPATCH);
+
+    return new RESTChannelInitializer() {
+      @Override
+      protected InboundRequestHandler getInboundRequestHandlerInstance() {
+        return new InboundRequestHandler(requestContext -> requestHandler) {
+          // per request logging would dominate the measurements
+          @Override
+          protected void logRequest(
+              final ChannelHandlerContext channelHandlerContext,
+              final HttpRequest httpRequest) {
+          }
+        }.withDispatchExecutor(dispatchExecutor);
+      }
+    }.withCompressionEnabled(options.isCompression());
+  }
+
+  // The service binds on its own thread, retry until it accepts connections
+  private LoadClient connect(final int port) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+
+    while (true) {
+      try {
+        return new LoadClient("127.0.0.1", port, options.getConnections());
+      } catch (Exception e) {
+        if (System.nanoTime() > deadline) {
+          throw ExceptionTools.checkedToRuntime(e);
+        }
+
+        Thread.sleep(50L);
+      }
+    }
+  }
+
+  // Returns how far behind schedule the sender fell at worst
+  private long sendRequests(final LoadClient client, final ImmutableList<LoadTarget> targets) {
+    final double intervalNanos = 1_000_000_000.0 / options.getRate();
+    final long startNanos = System.nanoTime();
+    final long measureFromNanos = startNanos + options.getWarmup().toNanos();
+    final long endNanos = measureFromNanos + options.getDuration().toNanos();
+
+    long maxLagNanos = 0L;
+
+    for (long i = 0; ; i++) {
+      final long scheduledNanos = startNanos + (long) (i * intervalNanos);
+
+      if (scheduledNanos >= endNanos) {
+        return maxLagNanos;
+      }
+
+      long now;
+
+      while ((now = System.nanoTime()) < scheduledNanos) {
+        LockSupport.parkNanos(scheduledNanos - now);
+      }
+
+      maxLagNanos = Math.max(maxLagNanos, now - scheduledNanos);
+
+      client.send(
+          targets.get((int) (i % targets.size())),
+          scheduledNanos,
+          scheduledNanos >= measureFromNanos);
+    }
+  }
+
+  private void printReport(
+      final ImmutableList<LoadTarget> targets,
+      final long maxLagNanos,
+      final long unanswered) {
+    final double seconds = options.getDuration().toNanos() / 1_000_000_000.0;
+
+    System.out.println();
+    System.out.println(String.format("%-18s %10s %8s %10s %10s %10s %10s %10s",
+        "target", "ok", "failed", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+
+    long totalSuccesses = 0L;
+
+    for (LoadTarget target : targets) {
+      final HistogramSnapshot latencies = target.getLatencies().snapshot();
+
+      totalSuccesses += target.getSuccesses();
+
+      System.out.println(String.format("%-18s %10d %8d %10.1f %10.3f %10.3f %10.3f %10.3f",
+          target.getName(),
+          target.getSuccesses(),
+          target.getFailures(),
+          target.getSuccesses() / seconds,
+          latencies.getValueAtQuantile(0.5) / NANOS_PER_MILLI,
+          latencies.getValueAtQuantile(0.99) / NANOS_PER_MILLI,
+          latencies.getValueAtQuantile(0.999) / NANOS_PER_MILLI,
+          latencies.getMax() / NANOS_PER_MILLI));
+    }
+
+    System.out.println();
+    System.out.println(String.format("Throughput: %.1f req/s (target %d req/s)",
+        totalSuccesses / seconds, options.getRate()));
+    System.out.println(String.format("Sender max lag: %.3f ms", maxLagNanos / NANOS_PER_MILLI));
+
+    if (unanswered > 0) {
+      System.out.println("Unanswered after the run: " + unanswered);
+    }
+  }
+
+  private static int findFreePort() {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    } catch (IOException e) {
+      throw ExceptionTools.checkedToRuntime(e);
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package org.granite.rest.benchmarks;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Settings for a LoadGenerator run, parsed from --name=value arguments. Unknown names are
+ * rejected so a typo does not silently run with the defaults.
+ */
+public class LoadGeneratorOptions {
+
+  private final static Splitter LIST_SPLITTER = Splitter.on(',').omitEmptyStrings().trimResults();
+
+  private final int rate;
+  private final Duration duration;
+  private final Duration warmup;
+  private final int connections;
+  private final ImmutableList<String> endpoints;
+  private final ImmutableList<String> contentTypes;
+  private final int items;
+  private final long providerLatencyMicros;
+  private final int dispatchThreads;
+  private final boolean compression;
+  private final String accessLog;
+  private final int port;
+
+  private LoadGeneratorOptions(final Map<String, String> values) {
+    this.rate = Integer.parseInt(values.remove("rate"));
+    this.duration = Duration.ofSeconds(Long.parseLong(values.remove("duration")));
+    this.warmup = Duration.ofSeconds(Long.parseLong(values.remove("warmup")));
+    this.connections = Integer.parseInt(values.remove("connections"));
+    this.endpoints = ImmutableList.copyOf(LIST_SPLITTER.split(values.remove("endpoints")));
+    this.contentTypes = ImmutableList.copyOf(LIST_SPLITTER.split(values.remove("contentTypes")));
+    this.items = Integer.parseInt(values.remove("items"));
+    this.providerLatencyMicros = Long.parseLong(values.remove("providerLatencyMicros"));
+    this.dispatchThreads = Integer.parseInt(values.remove("dispatchThreads"));
+    this.compression = Boolean.parseBoolean(values.remove("compression"));
+    this.accessLog = values.remove("accessLog");
+    this.port = Integer.parseInt(values.remove("port"));
+
+    checkArgument(values.isEmpty(), "Unknown options: %s", values.keySet());
+    checkArgument(rate > 0, "rate must be a positive number");
+    checkArgument(!duration.isZero() && !duration.isNegative(), "duration must be positive");
+    checkArgument(!warmup.isNegative(), "warmup must not be negative");
+    checkArgument(connections > 0, "connections must be a positive number");
+    checkArgument(!endpoints.isEmpty(), "endpoints must not be empty");
+    checkArgument(!contentTypes.isEmpty(), "contentTypes must not be empty");
+    checkArgument(items > 0, "items must be a positive number");
+    checkArgument(providerLatencyMicros >= 0, "providerLatencyMicros must not be negative");
+    checkArgument(dispatchThreads >= 0, "dispatchThreads must not be negative");
+    checkArgument(port >= 0, "port must not be negative");
+  }
+
+  public static LoadGeneratorOptions parse(final String... args) {
+    final Map<String, String> values = new HashMap<>();
+
+    values.put("rate", "2000");
+    values.put("duration", "30");
+    values.put("warmup", "5");
+    values.put("connections", "8");
+    values.put("endpoints", "getOne,getMany,post");
+    values.put("contentTypes", "json,msgpack");
+    values.put("items", "1000");
+    values.put("providerLatencyMicros", "0");
+    values.put("dispatchThreads", "0");
+    values.put("compression", "false");
+    values.put("accessLog", "");
+    values.put("port", "0");
+
+    for (String arg : args) {
+      checkArgument(arg.startsWith("--") && arg.indexOf('=') > 2,
+          "Expected --name=value but got %s", arg);
+
+      final int separator = arg.indexOf('=');
+
+      values.put(arg.substring(2, separator), arg.substring(separator + 1));
+    }
+
+    return new LoadGeneratorOptions(values);
+  }
+
+  // Requests per second, spread evenly whatever the server's response times
+  public int getRate() {
+    return rate;
+  }
+
+  // Measured time, after the warmup
+  public Duration getDuration() {
+    return duration;
+  }
+
+  public Duration getWarmup() {
+    return warmup;
+  }
+
+  public int getConnections() {
+    return connections;
+  }
+
+  public ImmutableList<String> getEndpoints() {
+    return endpoints;
+  }
+
+  public ImmutableList<String> getContentTypes() {
+    return contentTypes;
+  }
+
+  public int getItems() {
+    return items;
+  }
+
+  public long getProviderLatencyMicros() {
+    return providerLatencyMicros;
+  }
+
+  // 0 runs handlers on the event loop
+  public int getDispatchThreads() {
+    return dispatchThreads;
+  }
+
+  public boolean isCompression() {
+    return compression;
+  }
+
+  // File the service's access log is written to, empty turns it off
+  public String getAccessLog() {
+    return accessLog;
+  }
+
+  // 0 picks a free port
+  public int getPort() {
+    return port;
+  }
+
+  @Override
+  public String toString() {
+    return "rate=" + rate
+        + " duration=" + duration.getSeconds() + "s"
+        + " warmup=" + warmup.getSeconds() + "s"
+        + " connections=" + connections
+        + " endpoints=" + endpoints
+        + " contentTypes=" + contentTypes
+        + " items=" + items
+        + " providerLatencyMicros=" + providerLatencyMicros
+        + " dispatchThreads=" + dispatchThreads
+        + " compression=" + compression
+        + " accessLog=" + (accessLog.isEmpty() ? "off" : accessLog);
+  }
+}
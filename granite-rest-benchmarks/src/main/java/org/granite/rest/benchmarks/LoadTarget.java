@@ -0,0 +1,139 @@
+package org.granite.rest.benchmarks;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import org.granite.rest.handler.serialzation.ContentTypeSerializer;
+import org.granite.rest.handler.serialzation.JsonSerializer;
+import org.granite.rest.handler.serialzation.MsgPackSerializer;
+import org.granite.rest.metrics.LatencyHistogram;
+
+/**
+ * One endpoint in one content type: builds its requests and collects the results of the measured
+ * ones.
+ */
+public class LoadTarget {
+
+  private final String endpoint;
+  private final String contentType;
+  private final String contentTypeText;
+  private final int items;
+  private final byte[] postBody;
+  private final LatencyHistogram latencies = new LatencyHistogram();
+  private final LongAdder successes = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+
+  public LoadTarget(
+      final String endpoint,
+      final String contentType,
+      final BenchmarkItemProvider itemProvider) {
+    this.endpoint = checkNotNull(endpoint, "endpoint");
+    this.contentType = checkNotNull(contentType, "contentType");
+    this.items = itemProvider.size();
+
+    final ContentTypeSerializer<BenchmarkItem> serializer;
+
+    switch (contentType) {
+      case "json":
+        serializer = new JsonSerializer<>(BenchmarkItem.TYPE);
+        break;
+      case "msgpack":
+        serializer = new MsgPackSerializer<>(BenchmarkItem.TYPE);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown content type: " + contentType);
+    }
+
+    switch (endpoint) {
+      case "getOne":
+      case "getMany":
+        this.postBody = null;
+        break;
+      case "post":
+        this.postBody = serializer.serializeOne(itemProvider.getOne(0, null));
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown endpoint: " + endpoint);
+    }
+
+    this.contentTypeText = serializer.getContentType();
+  }
+
+  public FullHttpRequest createRequest() {
+    final FullHttpRequest request;
+
+    switch (endpoint) {
+      case "getOne":
+        request = new DefaultFullHttpRequest(
+            HttpVersion.HTTP_1_1,
+            HttpMethod.GET,
+            "/items/" + ThreadLocalRandom.current().nextInt(items));
+        break;
+      case "getMany":
+        request = new DefaultFullHttpRequest(
+            HttpVersion.HTTP_1_1,
+            HttpMethod.GET,
+            "/items?_perPage=20&_page=" + (1 + ThreadLocalRandom.current().nextInt(5)));
+        break;
+      default:
+        request = new DefaultFullHttpRequest(
+            HttpVersion.HTTP_1_1,
+            HttpMethod.POST,
+            "/items",
+            Unpooled.wrappedBuffer(postBody));
+        request.headers()
+            .set(HttpHeaderNames.CONTENT_TYPE, contentTypeText)
+            .set(HttpHeaderNames.CONTENT_LENGTH, postBody.length);
+        break;
+    }
+
+    request.headers()
+        .set(HttpHeaderNames.HOST, "localhost")
+        .set(HttpHeaderNames.ACCEPT, contentTypeText)
+        .set(HttpHeaderNames.ACCEPT_ENCODING, HttpHeaderValues.GZIP_DEFLATE);
+
+    return request;
+  }
+
+  public void recordSuccess(final long latencyNanos) {
+    successes.increment();
+    latencies.record(latencyNanos);
+  }
+
+  // Failed requests are not timed, the report lists them separately
+  public void recordFailure() {
+    failures.increment();
+  }
+
+  public String getName() {
+    return endpoint + " " + contentType;
+  }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  public String getContentType() {
+    return contentType;
+  }
+
+  public LatencyHistogram getLatencies() {
+    return latencies;
+  }
+
+  public long getSuccesses() {
+    return successes.sum();
+  }
+
+  public long getFailures() {
+    return failures.sum();
+  }
+}
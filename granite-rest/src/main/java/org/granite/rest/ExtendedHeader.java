@@ -8,7 +8,11 @@ import io.netty.handler.codec.http.HttpResponse;
 public enum ExtendedHeader {
   TotalCount("X-Total-Count"),
   ApiKey("x-api-key"),
-  RequestId("X-Request-ID");
+  RequestId("X-Request-ID"),
+  HealthCheckAge("X-Health-Check-Age"),
+  RateLimitLimit("X-RateLimit-Limit"),
+  RateLimitRemaining("X-RateLimit-Remaining"),
+  RateLimitReset("X-RateLimit-Reset");
 
   final String headerKey;
 
@@ -10,73 +10,106 @@ import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERR
 import static io.netty.handler.codec.http.HttpResponseStatus.METHOD_NOT_ALLOWED;
 import static io.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
 import static io.netty.handler.codec.http.HttpResponseStatus.NOT_IMPLEMENTED;
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_MODIFIED;
 import static io.netty.handler.codec.http.HttpResponseStatus.NO_CONTENT;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+import static io.netty.handler.codec.http.HttpResponseStatus.TOO_MANY_REQUESTS;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.DefaultHttpResponse;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.stream.ChunkedInput;
+import java.nio.charset.StandardCharsets;
 import org.granite.rest.handler.ContentType;
 
 public class Response {
 
+  // The fixed replies are encoded once, see ResponseTemplate
+  private final static ResponseTemplate METHOD_NOT_ALLOWED_TEMPLATE =
+      createTemplate("NOT ALLOWED", METHOD_NOT_ALLOWED);
+  private final static ResponseTemplate FORBIDDEN_TEMPLATE =
+      createTemplate("FORBIDDEN", FORBIDDEN);
+  private final static ResponseTemplate INTERNAL_ERROR_TEMPLATE =
+      createTemplate("INTERNAL ERROR", INTERNAL_SERVER_ERROR);
+  private final static ResponseTemplate NOT_IMPLEMENTED_TEMPLATE =
+      createTemplate("NOT IMPLEMENTED", NOT_IMPLEMENTED);
+  private final static ResponseTemplate SERVICE_UNAVAILABLE_TEMPLATE =
+      createTemplate("SERVICE UNAVAILABLE", SERVICE_UNAVAILABLE);
+  private final static ResponseTemplate NOT_FOUND_TEMPLATE =
+      createTemplate("NOT FOUND", NOT_FOUND);
+  private final static ResponseTemplate BAD_REQUEST_TEMPLATE =
+      createTemplate("BAD REQUEST", BAD_REQUEST);
+  private final static ResponseTemplate NO_CONTENT_TEMPLATE =
+      createTemplate("", NO_CONTENT);
+  private final static ResponseTemplate TOO_MANY_REQUESTS_TEMPLATE =
+      createTemplate("TOO MANY REQUESTS", TOO_MANY_REQUESTS);
+  private final static ResponseTemplate HEALTHY_TEMPLATE =
+      createTemplate("HEALTHY", OK);
+
   public static HttpResponse CONTINUE() {
     return new DefaultFullHttpResponse(HTTP_1_1, CONTINUE);
   }
 
+  // No Content-Length, on a 304 it would describe the cached representation
+  // and the codec already knows the response has no body
+  public static HttpResponse NOT_MODIFIED() {
+    return new DefaultFullHttpResponse(HTTP_1_1, NOT_MODIFIED);
+  }
+
   public static HttpResponse METHOD_NOT_ALLOWED() {
-    return createResponse(
-        "NOT ALLOWED".getBytes(),
-        METHOD_NOT_ALLOWED,
-        ContentType.TextPlain
-            .getText());
+    return METHOD_NOT_ALLOWED_TEMPLATE.newResponse();
   }
 
   public static HttpResponse FORBIDDEN() {
-    return createResponse(
-        "FORBIDDEN".getBytes(),
-        FORBIDDEN,
-        ContentType.TextPlain
-            .getText());
+    return FORBIDDEN_TEMPLATE.newResponse();
   }
 
   public static HttpResponse INTERNAL_ERROR() {
-    return createResponse(
-        "INTERNAL ERROR".getBytes(),
-        INTERNAL_SERVER_ERROR,
-        ContentType.TextPlain
-            .getText());
+    return INTERNAL_ERROR_TEMPLATE.newResponse();
   }
 
   public static HttpResponse NOT_IMPLEMENTED() {
-    return createResponse(
-        "NOT IMPLEMENTED".getBytes(),
-        NOT_IMPLEMENTED,
-        ContentType.TextPlain
-            .getText());
+    return NOT_IMPLEMENTED_TEMPLATE.newResponse();
+  }
+
+  public static HttpResponse SERVICE_UNAVAILABLE() {
+    return SERVICE_UNAVAILABLE_TEMPLATE.newResponse();
   }
 
   public static HttpResponse NOT_FOUND() {
-    return createResponse(
-        "NOT FOUND".getBytes(),
-        NOT_FOUND,
-        ContentType.TextPlain.getText());
+    return NOT_FOUND_TEMPLATE.newResponse();
   }
 
   public static HttpResponse BAD_REQUEST() {
-    return createResponse(
-        "BAD REQUEST".getBytes(),
-        BAD_REQUEST,
-        ContentType.TextPlain.getText());
+    return BAD_REQUEST_TEMPLATE.newResponse();
   }
 
   public static HttpResponse NO_CONTENT() {
-    return createResponse(
-        new byte[]{},
-        NO_CONTENT,
-        ContentType.TextPlain.getText());
+    return NO_CONTENT_TEMPLATE.newResponse();
+  }
+
+  public static HttpResponse TOO_MANY_REQUESTS() {
+    return TOO_MANY_REQUESTS_TEMPLATE.newResponse();
+  }
+
+  public static HttpResponse HEALTHY() {
+    return HEALTHY_TEMPLATE.newResponse();
+  }
+
+  public static ResponseTemplate createTemplate(
+      final String responseBody,
+      final HttpResponseStatus httpResponseStatus) {
+    checkNotNull(responseBody, "responseBody");
+
+    return new ResponseTemplate(
+        httpResponseStatus,
+        ContentType.TextPlain.getText(),
+        responseBody.getBytes(StandardCharsets.UTF_8));
   }
 
   public static DefaultHttpResponse createResponse(
@@ -84,13 +117,26 @@ public class Response {
       final HttpResponseStatus httpResponseStatus,
       final String contentType) {
     checkNotNull(responseBody, "responseBody");
+
+    return createResponse(
+        Unpooled.wrappedBuffer(responseBody),
+        httpResponseStatus,
+        contentType);
+  }
+
+  // Takes ownership of responseBody, it is released once the response is written
+  public static DefaultHttpResponse createResponse(
+      final ByteBuf responseBody,
+      final HttpResponseStatus httpResponseStatus,
+      final String contentType) {
+    checkNotNull(responseBody, "responseBody");
     checkNotNull(httpResponseStatus, "httpResponseStatus");
     checkNotNull(contentType, "contentType");
 
     DefaultFullHttpResponse response = new DefaultFullHttpResponse(
         HTTP_1_1,
         httpResponseStatus,
-        Unpooled.wrappedBuffer(responseBody));
+        responseBody);
 
     response.headers().set(CONTENT_TYPE, contentType);
 
@@ -98,4 +144,11 @@ public class Response {
 
     return response;
   }
+
+  public static StreamingResponse createStreamingResponse(
+      final ChunkedInput<ByteBuf> responseBody,
+      final HttpResponseStatus httpResponseStatus,
+      final String contentType) {
+    return new StreamingResponse(responseBody, httpResponseStatus, contentType);
+  }
 }
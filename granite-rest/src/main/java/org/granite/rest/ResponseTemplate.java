@@ -0,0 +1,75 @@
+package org.granite.rest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.AsciiString;
+
+/**
+ * A fixed response that is encoded once and shared. The body lives in a read-only direct buffer
+ * that is never released, and the headers are kept as AsciiStrings that need no conversion when
+ * they are written. Every newResponse() gets its own header set, so per-request headers can still
+ * be added, and a duplicate of the body that costs no copy.
+ */
+public class ResponseTemplate {
+
+  private final HttpResponseStatus status;
+  private final ByteBuf body;
+  private final HttpHeaders headers;
+
+  public ResponseTemplate(
+      final HttpResponseStatus status,
+      final String contentType,
+      final byte[] body) {
+    this.status = checkNotNull(status, "status");
+    checkNotNull(contentType, "contentType");
+    checkNotNull(body, "body");
+
+    this.body = Unpooled.unreleasableBuffer(Unpooled
+        .directBuffer(body.length, body.length)
+        .writeBytes(body)
+        .asReadOnly());
+
+    this.headers = new DefaultHttpHeaders(false)
+        .set(HttpHeaderNames.CONTENT_TYPE, AsciiString.cached(contentType))
+        .set(HttpHeaderNames.CONTENT_LENGTH, AsciiString.cached(String.valueOf(body.length)));
+  }
+
+  // For headers that never change, e.g. Retry-After. Only call this before
+  // the template is shared.
+  public ResponseTemplate withHeader(final CharSequence name, final Object value) {
+    checkNotNull(name, "name");
+    checkNotNull(value, "value");
+
+    headers.set(AsciiString.of(name), AsciiString.of(value.toString()));
+    return this;
+  }
+
+  public FullHttpResponse newResponse() {
+    final DefaultFullHttpResponse response = new DefaultFullHttpResponse(
+        HTTP_1_1,
+        status,
+        body.retainedDuplicate(),
+        false);
+
+    response.headers().set(headers);
+
+    return response;
+  }
+
+  public HttpResponseStatus getStatus() {
+    return status;
+  }
+
+  public int getContentLength() {
+    return body.readableBytes();
+  }
+}
@@ -0,0 +1,40 @@
+package org.granite.rest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.stream.ChunkedInput;
+
+/**
+ * A response whose body is written as chunks after the headers. Writing the body requires a
+ * ChunkedWriteHandler in the pipeline, which RESTChannelInitializer installs.
+ */
+public class StreamingResponse extends DefaultHttpResponse {
+
+  private final HttpChunkedInput content;
+
+  public StreamingResponse(
+      final ChunkedInput<ByteBuf> content,
+      final HttpResponseStatus httpResponseStatus,
+      final String contentType) {
+    super(HTTP_1_1, checkNotNull(httpResponseStatus, "httpResponseStatus"));
+    checkNotNull(content, "content");
+    checkNotNull(contentType, "contentType");
+
+    this.content = new HttpChunkedInput(content);
+
+    headers().set(HttpHeaderNames.CONTENT_TYPE, contentType);
+
+    HttpUtil.setTransferEncodingChunked(this, true);
+  }
+
+  public HttpChunkedInput getContent() {
+    return content;
+  }
+}
@@ -0,0 +1,314 @@
+package org.granite.rest.accesslog;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.base.Throwables;
+import io.netty.handler.codec.http.HttpMethod;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.granite.log.LogTools;
+import org.granite.rest.metrics.ServiceMetrics;
+
+/**
+ * Request logging off the event loop. Callers copy a few fields into a slot of a bounded lock-free
+ * ring buffer, a single writer thread formats the slots and hands them to the sink in batches.
+ * Logging never blocks a caller: once the buffer is more than sampleThreshold full only one record
+ * in sampleRate is kept, and when it is full records are dropped. Both are counted and reported.
+ */
+public class AccessLog implements AutoCloseable {
+
+  private final static long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  private final AccessLogSink sink;
+  private final int capacity;
+  private final int mask;
+  private final AccessLogEntry[] entries;
+  // A slot can be claimed for position p when its sequence is p and read
+  // once it is p + 1, the writer hands it back as p + capacity
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong head = new AtomicLong();
+  private final LongAdder written = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder sampledOut = new LongAdder();
+  private final StringBuilder lineBuilder = new StringBuilder(256);
+
+  private double sampleThreshold = 0.75;
+  private long sampleDepth;
+  private int sampleRate = 10;
+  private int maxBatchSize = 1024;
+  private long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(100);
+  private volatile boolean running = false;
+  private Thread writerThread = null;
+  private long reportedDropped = 0L;
+  private long reportedSampledOut = 0L;
+  private long lastReportNanos = System.nanoTime();
+
+  public AccessLog(final AccessLogSink sink) {
+    this(sink, 16384);
+  }
+
+  public AccessLog(final AccessLogSink sink, final int capacity) {
+    checkArgument(capacity > 1, "capacity must be greater than 1");
+    checkArgument(capacity <= 1 << 30, "capacity must not exceed 2^30");
+
+    this.sink = checkNotNull(sink, "sink");
+    this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+    this.mask = this.capacity - 1;
+    this.entries = new AccessLogEntry[this.capacity];
+    this.sequences = new AtomicLongArray(this.capacity);
+
+    for (int i = 0; i < this.capacity; i++) {
+      entries[i] = new AccessLogEntry();
+      sequences.set(i, i);
+    }
+
+    this.sampleDepth = (long) (this.capacity * sampleThreshold);
+  }
+
+  // Fraction of the buffer that may fill before records are sampled, 1 turns
+  // sampling off
+  public AccessLog withSampleThreshold(final double sampleThreshold) {
+    checkArgument(sampleThreshold > 0 && sampleThreshold <= 1,
+        "sampleThreshold must be greater than 0 and at most 1");
+    this.sampleThreshold = sampleThreshold;
+    this.sampleDepth = sampleThreshold < 1 ? (long) (capacity * sampleThreshold) : Long.MAX_VALUE;
+    return this;
+  }
+
+  // One in sampleRate records is kept while the buffer is above the threshold
+  public AccessLog withSampleRate(final int sampleRate) {
+    checkArgument(sampleRate > 0, "sampleRate must be a positive number");
+    this.sampleRate = sampleRate;
+    return this;
+  }
+
+  public AccessLog withMaxBatchSize(final int maxBatchSize) {
+    checkArgument(maxBatchSize > 0, "maxBatchSize must be a positive number");
+    this.maxBatchSize = maxBatchSize;
+    return this;
+  }
+
+  // How long the writer sleeps once the buffer is empty
+  public AccessLog withFlushInterval(final Duration flushInterval) {
+    checkNotNull(flushInterval, "flushInterval");
+    checkArgument(!flushInterval.isNegative() && !flushInterval.isZero(),
+        "flushInterval must be positive");
+    this.flushIntervalNanos = flushInterval.toNanos();
+    return this;
+  }
+
+  // Only for a log used without a RESTService, which reports the counts of
+  // whichever log it is using itself
+  public AccessLog withServiceMetrics(final ServiceMetrics serviceMetrics) {
+    checkNotNull(serviceMetrics, "serviceMetrics");
+
+    serviceMetrics
+        .registerCounter("AccessLogWritten", written::sum)
+        .registerCounter("AccessLogDropped", dropped::sum)
+        .registerCounter("AccessLogSampledOut", sampledOut::sum);
+    return this;
+  }
+
+  public synchronized AccessLog start() {
+    checkState(writerThread == null, "AccessLog was already started");
+
+    running = true;
+
+    writerThread = new Thread(this::writeLoop, "granite-rest-access-log");
+    writerThread.setDaemon(true);
+    writerThread.start();
+    return this;
+  }
+
+  // Returns false if the record was sampled out or dropped
+  public boolean append(
+      final SocketAddress remoteAddress,
+      final HttpMethod method,
+      final String uri,
+      final int status,
+      final long requestBytes,
+      final long responseBytes,
+      final long durationNanos,
+      final Object requestId) {
+
+    long position = tail.get();
+
+    if (position - head.get() >= sampleDepth
+        && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+      sampledOut.increment();
+      return false;
+    }
+
+    int index;
+
+    while (true) {
+      index = (int) position & mask;
+
+      final long sequence = sequences.get(index);
+
+      if (sequence == position) {
+        if (tail.compareAndSet(position, position + 1)) {
+          break;
+        }
+
+        position = tail.get();
+      } else if (sequence < position) {
+        // the writer has not freed this slot yet, the buffer is full
+        dropped.increment();
+        return false;
+      } else {
+        position = tail.get();
+      }
+    }
+
+    entries[index].set(
+        System.currentTimeMillis(),
+        remoteAddress,
+        method,
+        uri,
+        status,
+        requestBytes,
+        responseBytes,
+        durationNanos,
+        requestId);
+
+    sequences.lazySet(index, position + 1);
+    return true;
+  }
+
+  public long getWritten() {
+    return written.sum();
+  }
+
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  public long getSampledOut() {
+    return sampledOut.sum();
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  // Records still in the buffer are written before the sink is closed
+  @Override
+  public void close() {
+    final Thread thread;
+
+    synchronized (this) {
+      thread = writerThread;
+      running = false;
+    }
+
+    if (thread != null) {
+      LockSupport.unpark(thread);
+
+      try {
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    try {
+      sink.close();
+    } catch (IOException e) {
+      LogTools.error(Throwables.getStackTraceAsString(e));
+    }
+  }
+
+  private void writeLoop() {
+    while (true) {
+      final boolean wasRunning = running;
+      final int batchSize = writeBatch();
+
+      reportLosses(false);
+
+      if (batchSize == 0) {
+        if (!wasRunning) {
+          break;
+        }
+
+        LockSupport.parkNanos(this, flushIntervalNanos);
+      }
+    }
+
+    reportLosses(true);
+  }
+
+  private int writeBatch() {
+    long position = head.get();
+    int count = 0;
+
+    while (count < maxBatchSize) {
+      final int index = (int) position & mask;
+
+      if (sequences.get(index) != position + 1) {
+        break;
+      }
+
+      final AccessLogEntry entry = entries[index];
+
+      lineBuilder.setLength(0);
+      entry.appendTo(lineBuilder);
+      entry.clear();
+
+      sequences.lazySet(index, position + capacity);
+      head.lazySet(++position);
+      count++;
+
+      try {
+        sink.write(lineBuilder.toString());
+      } catch (IOException e) {
+        LogTools.error("Failed to write access log: {0}", e.getMessage());
+      }
+    }
+
+    if (count > 0) {
+      written.add(count);
+
+      try {
+        sink.flush();
+      } catch (IOException e) {
+        LogTools.error("Failed to flush access log: {0}", e.getMessage());
+      }
+    }
+
+    return count;
+  }
+
+  // Makes gaps in the log visible without writing a line per lost record
+  private void reportLosses(final boolean force) {
+    final long now = System.nanoTime();
+
+    if (!force && now - lastReportNanos < REPORT_INTERVAL_NANOS) {
+      return;
+    }
+
+    lastReportNanos = now;
+
+    final long totalDropped = dropped.sum();
+    final long totalSampledOut = sampledOut.sum();
+
+    if (totalDropped != reportedDropped || totalSampledOut != reportedSampledOut) {
+      LogTools.warn("Access log buffer overflowed: {0} records dropped, {1} sampled out",
+          String.valueOf(totalDropped - reportedDropped),
+          String.valueOf(totalSampledOut - reportedSampledOut));
+
+      reportedDropped = totalDropped;
+      reportedSampledOut = totalSampledOut;
+    }
+  }
+}
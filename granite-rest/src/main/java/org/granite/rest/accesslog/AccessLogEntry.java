@@ -0,0 +1,64 @@
+package org.granite.rest.accesslog;
+
+import io.netty.handler.codec.http.HttpMethod;
+import java.net.SocketAddress;
+import java.time.Instant;
+
+// A reusable ring buffer slot. Producers only copy references and numbers
+// into it, all formatting happens on the writer thread.
+class AccessLogEntry {
+
+  private long timestamp;
+  private SocketAddress remoteAddress;
+  private HttpMethod method;
+  private String uri;
+  private int status;
+  private long requestBytes;
+  private long responseBytes;
+  private long durationNanos;
+  private Object requestId;
+
+  void set(
+      final long timestamp,
+      final SocketAddress remoteAddress,
+      final HttpMethod method,
+      final String uri,
+      final int status,
+      final long requestBytes,
+      final long responseBytes,
+      final long durationNanos,
+      final Object requestId) {
+    this.timestamp = timestamp;
+    this.remoteAddress = remoteAddress;
+    this.method = method;
+    this.uri = uri;
+    this.status = status;
+    this.requestBytes = requestBytes;
+    this.responseBytes = responseBytes;
+    this.durationNanos = durationNanos;
+    this.requestId = requestId;
+  }
+
+  // Tab separated: time, remote address, method, uri, status, request bytes,
+  // response bytes, duration in microseconds, request id
+  void appendTo(final StringBuilder builder) {
+    builder
+        .append(Instant.ofEpochMilli(timestamp)).append('\t')
+        .append(remoteAddress == null ? "-" : remoteAddress.toString()).append('\t')
+        .append(method == null ? "-" : method.name()).append('\t')
+        .append(uri).append('\t')
+        .append(status).append('\t')
+        .append(requestBytes).append('\t')
+        .append(responseBytes).append('\t')
+        .append(durationNanos / 1000L).append('\t')
+        .append(requestId == null ? "-" : requestId.toString());
+  }
+
+  // Lets the request's strings be collected while the slot waits for reuse
+  void clear() {
+    remoteAddress = null;
+    method = null;
+    uri = null;
+    requestId = null;
+  }
+}
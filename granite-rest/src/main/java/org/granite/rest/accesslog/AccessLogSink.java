@@ -0,0 +1,18 @@
+package org.granite.rest.accesslog;
+
+import java.io.IOException;
+
+/**
+ * Where an AccessLog writes its formatted lines. Only the AccessLog's writer thread calls a sink,
+ * flush is called once per batch.
+ */
+public interface AccessLogSink {
+
+  void write(String line) throws IOException;
+
+  default void flush() throws IOException {
+  }
+
+  default void close() throws IOException {
+  }
+}
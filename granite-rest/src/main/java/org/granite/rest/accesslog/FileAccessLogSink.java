@@ -0,0 +1,50 @@
+package org.granite.rest.accesslog;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.granite.base.ExceptionTools;
+
+/**
+ * Appends access log lines to a file. Lines are buffered and reach the file once per batch.
+ */
+public class FileAccessLogSink implements AccessLogSink {
+
+  private final BufferedWriter writer;
+
+  public FileAccessLogSink(final Path path) {
+    checkNotNull(path, "path");
+
+    try {
+      this.writer = Files.newBufferedWriter(
+          path,
+          StandardCharsets.UTF_8,
+          StandardOpenOption.CREATE,
+          StandardOpenOption.APPEND,
+          StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      throw ExceptionTools.checkedToRuntime(e);
+    }
+  }
+
+  @Override
+  public void write(final String line) throws IOException {
+    writer.write(line);
+    writer.newLine();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    writer.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+}
@@ -0,0 +1,14 @@
+package org.granite.rest.accesslog;
+
+import org.granite.log.LogTools;
+
+/**
+ * Writes every access log line at info level through LogTools.
+ */
+public class LoggerAccessLogSink implements AccessLogSink {
+
+  @Override
+  public void write(final String line) {
+    LogTools.info("{0}", line);
+  }
+}
@@ -0,0 +1,574 @@
+package org.granite.rest.handler;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.primitives.Ints;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.granite.base.StringTools;
+import org.granite.log.LogTools;
+import org.granite.rest.ExtendedHeader;
+import org.granite.rest.Response;
+import org.granite.rest.handler.serialzation.ContentTypeSerializer;
+import org.granite.rest.handler.serialzation.JsonSerializer;
+import org.granite.rest.model.BulkUpdateSummary;
+import org.granite.rest.model.Query;
+import org.granite.rest.model.RequestContext;
+import org.granite.rest.model.RequestHandler;
+import org.granite.rest.model.UpdateResult;
+
+/**
+ * Request parsing and response building shared by the sync and async REST handlers.
+ */
+public abstract class AbstractRESTRequestHandler<K, V> implements RequestHandler {
+
+  // RequestContext lower cases query string keys
+  private final static String SORT_FIELD = "_sortfield";
+  private final static String SORT_DIR = "_sortdir";
+  private final static String PAGE = "_page";
+  private final static String PER_PAGE = "_perpage";
+  private final static String FILTERS = "_filters";
+  private final static String CURSOR = "_cursor";
+  private final static String SORT_DIR_ASC = "ASC";
+  private final HashMap<String, ContentTypeSerializer<V>> contentTypeSerializers = new HashMap<>();
+
+  private final JsonSerializer<V> defaultSerializer;
+  private final FieldComparatorFactory<V> fieldComparatorFactory;
+
+  private int defaultPerPage = 30;
+  private int streamChunkSize = 16384;
+  private boolean streamingResponses = false;
+  private int parallelSortThreshold = SortTools.DEFAULT_PARALLEL_THRESHOLD;
+  private boolean contentHashETags = false;
+  private int maxRequestBodySize = -1;
+  private Function<V, K> itemKeyFunction = null;
+  private final boolean keyFromItemOverridden = overridesKeyFromItem(getClass());
+
+  protected AbstractRESTRequestHandler(
+      final TypeReference<V> itemClass,
+      final List<ContentTypeSerializer<V>> serializers
+  ) {
+    checkNotNull(serializers, "serializers");
+
+    this.defaultSerializer =
+        new JsonSerializer<>(
+            checkNotNull(itemClass, "itemClass")
+        );
+
+    for (ContentTypeSerializer<V> serializer : serializers) {
+      if (!defaultSerializer.getContentType().equalsIgnoreCase(serializer.getContentType())) {
+        contentTypeSerializers.put(serializer.getContentType(), serializer);
+      }
+    }
+
+    this.fieldComparatorFactory = FieldComparatorFactory.fromType(itemClass.getType());
+  }
+
+  protected abstract Comparator<V> getValueComparator();
+
+  protected abstract K keyFromRequestPath(final List<String> keyString);
+
+  // Handlers routed through a template with a key variable can override this
+  // to read it with requestContext.getPathVariable
+  protected K keyFromRequestContext(final RequestContext requestContext) {
+    return keyFromRequestPath(requestContext.getRequestPath());
+  }
+
+  protected HttpResponse createGetOneResponse(
+      final V item,
+      final RequestContext requestContext,
+      final ContentTypeSerializer<V> serializer) {
+
+    if (item == null) {
+      return Response.NOT_FOUND();
+    }
+
+    return Response.createResponse(
+        serializer.serializeOne(requestContext.getAllocator(), item),
+        HttpResponseStatus.OK,
+        serializer.getContentType()
+    );
+  }
+
+  protected HttpResponse createGetManyResponse(
+      final SubListResponse<V> items,
+      final Query query,
+      final RequestContext requestContext,
+      final ContentTypeSerializer<V> serializer) {
+
+    if (items == null) {
+      return Response.NOT_FOUND();
+    }
+
+    final List<V> responseValues = items.isSortedAndPaged()
+        ? items.getResponseValues()
+        : sortAndPage(items.getResponseValues(), query);
+
+    final DefaultHttpResponse response = Response.createResponse(
+        serializer.serializeMany(
+            requestContext.getAllocator(),
+            responseValues == null ? ImmutableList.of() : responseValues
+        ),
+        HttpResponseStatus.OK,
+        serializer.getContentType()
+    );
+
+    ExtendedHeader.setHeader(
+        response,
+        ExtendedHeader.TotalCount,
+        items.getTotalCount()
+    );
+
+    return response;
+  }
+
+  protected HttpResponse applyETag(
+      final HttpResponse httpResponse,
+      final String etag,
+      final RequestContext requestContext) {
+    return ETagTools.applyETag(httpResponse, etag, requestContext, contentHashETags);
+  }
+
+  protected HttpResponse createStreamingResponse(
+      final Stream<V> items,
+      final ContentTypeSerializer<V> serializer) {
+
+    return Response.createStreamingResponse(
+        serializer.streamMany(items, streamChunkSize),
+        HttpResponseStatus.OK,
+        serializer.getContentType()
+    );
+  }
+
+  protected Query createQuery(final RequestContext requestContext) {
+    return new Query(
+        getPropertyFilter(requestContext),
+        getSortField(requestContext),
+        getSortDescending(requestContext),
+        getPageNum(requestContext),
+        getItemsPerPage(requestContext),
+        getCursor(requestContext));
+  }
+
+  // A stream is written in the provider's order without a total count, so it
+  // is only used when enabled, for unpaged requests that ask for no sort and
+  // for serializers that can stream a single array
+  protected boolean isStreamingRequest(
+      final RequestContext requestContext,
+      final ContentTypeSerializer<V> serializer) {
+    return streamingResponses
+        && serializer.isStreamable()
+        && getPageNum(requestContext) == null
+        && getSortField(requestContext) == null
+        && !requestContext.getQueryStringParameters().containsKey(SORT_DIR);
+  }
+
+  protected HttpResponse createUpdateResponse(
+      final UpdateResult<K> result,
+      final boolean requireExistingKey) {
+
+    if (requireExistingKey && !result.keyExists()) {
+      return Response.NOT_FOUND();
+    }
+
+    checkState(result.isSuccessful(), result.getMessage());
+
+    return Response.NO_CONTENT();
+  }
+
+  // Bulk writes answer with every item's result, in request order, encoded
+  // like a GET of the same resource would be
+  protected HttpResponse createBulkUpdateResponse(
+      final List<UpdateResult<K>> results,
+      final RequestContext requestContext) {
+
+    if (results == null) {
+      return Response.INTERNAL_ERROR();
+    }
+
+    final ContentTypeSerializer<V> serializer = findAcceptSerializer(requestContext);
+
+    return Response.createResponse(
+        serializer.serializeResults(requestContext.getAllocator(), results),
+        HttpResponseStatus.OK,
+        serializer.getContentType()
+    );
+  }
+
+  protected HttpResponse createBulkUpdateResponse(
+      final BulkUpdateSummary<K> summary,
+      final RequestContext requestContext) {
+
+    final ContentTypeSerializer<V> serializer = findAcceptSerializer(requestContext);
+
+    return Response.createResponse(
+        serializer.serializeResults(requestContext.getAllocator(), summary),
+        HttpResponseStatus.OK,
+        serializer.getContentType()
+    );
+  }
+
+  protected HttpResponse createHealthyResponse() {
+    return Response.HEALTHY();
+  }
+
+  protected List<V> sortAndPage(final List<V> items, final Query query) {
+    if (items == null || items.isEmpty()) {
+      return ImmutableList.of();
+    }
+
+    final Comparator<V> comparator = getSortComparator(query);
+
+    if (!query.isPaged()) {
+      return items.size() > 1
+          ? SortTools.sort(items, comparator, parallelSortThreshold)
+          : items;
+    }
+
+    // The page is cut here from the same offsets the sorted prefix is sized
+    // by, only the items up to the end of the page need to be in order
+    final int start = (int) Math.min(items.size(), query.getOffset());
+    final int end = (int) Math.min(items.size(), (long) start + query.getLimit());
+
+    if (start == end) {
+      return ImmutableList.of();
+    }
+
+    return SortTools
+        .sortedPrefix(items, comparator, end, parallelSortThreshold)
+        .subList(start, end);
+  }
+
+  // Sorts on the requested _sortField when the item class has a comparable
+  // property by that name, ties and unknown fields use getValueComparator
+  protected Comparator<V> getSortComparator(final Query query) {
+    final Comparator<V> valueComparator = query.isSortDescending()
+        ? getValueComparator().reversed()
+        : getValueComparator();
+
+    final Comparator<V> fieldComparator = fieldComparatorFactory.getComparator(
+        query.getSortField(),
+        query.isSortDescending());
+
+    return fieldComparator == null
+        ? valueComparator
+        : fieldComparator.thenComparing(valueComparator);
+  }
+
+  public FieldComparatorFactory<V> getFieldComparatorFactory() {
+    return fieldComparatorFactory;
+  }
+
+  private HashMap<String, ContentTypeSerializer<V>> getContentTypeSerializers() {
+    return contentTypeSerializers;
+  }
+
+  public AbstractRESTRequestHandler<K, V> withDefaultPerPage(final int perPage) {
+    checkArgument(perPage > 0, "defaultPerPage should be a positive number");
+    this.defaultPerPage = perPage;
+    return this;
+  }
+
+  public AbstractRESTRequestHandler<K, V> withStreamChunkSize(final int streamChunkSize) {
+    checkArgument(streamChunkSize > 0, "streamChunkSize should be a positive number");
+    this.streamChunkSize = streamChunkSize;
+    return this;
+  }
+
+  public int getStreamChunkSize() {
+    return streamChunkSize;
+  }
+
+  // Unpaged, unsorted GETs are answered from the provider's streamMany when
+  // it returns a stream. Streamed responses carry no X-Total-Count and list
+  // the items in the order the provider returns them.
+  public AbstractRESTRequestHandler<K, V> withStreamingResponses(
+      final boolean streamingResponses) {
+    this.streamingResponses = streamingResponses;
+    return this;
+  }
+
+  public boolean isStreamingResponses() {
+    return streamingResponses;
+  }
+
+  // Without a provider version, tag responses with a hash of the serialized body
+  public AbstractRESTRequestHandler<K, V> withContentHashETags(final boolean contentHashETags) {
+    this.contentHashETags = contentHashETags;
+    return this;
+  }
+
+  public boolean isContentHashETags() {
+    return contentHashETags;
+  }
+
+  public AbstractRESTRequestHandler<K, V> withParallelSortThreshold(
+      final int parallelSortThreshold) {
+    checkArgument(parallelSortThreshold > 0, "parallelSortThreshold should be a positive number");
+    this.parallelSortThreshold = parallelSortThreshold;
+    return this;
+  }
+
+  public int getParallelSortThreshold() {
+    return parallelSortThreshold;
+  }
+
+  public int getDefaultPerPage() {
+    return defaultPerPage;
+  }
+
+  // Overrides the server wide request body limit for this handler's routes
+  public AbstractRESTRequestHandler<K, V> withMaxRequestBodySize(final int maxRequestBodySize) {
+    checkArgument(maxRequestBodySize >= 0, "maxRequestBodySize should not be negative");
+    this.maxRequestBodySize = maxRequestBodySize;
+    return this;
+  }
+
+  @Override
+  public int getMaxRequestBodySize() {
+    return maxRequestBodySize;
+  }
+
+  // Enables bulk PUTs, an array body of items that are each updated under the
+  // key this reads from them. Without it, or an override of keyFromItem, bulk
+  // PUTs are answered with 501. A request where two items share a key is
+  // answered with 400.
+  public AbstractRESTRequestHandler<K, V> withItemKey(final Function<V, K> itemKeyFunction) {
+    this.itemKeyFunction = checkNotNull(itemKeyFunction, "itemKeyFunction");
+    return this;
+  }
+
+  public JsonSerializer<V> getDefaultSerializer() {
+    return defaultSerializer;
+  }
+
+  protected String getSortField(final RequestContext requestContext) {
+    checkNotNull(requestContext, "requestContext");
+
+    final ImmutableCollection<String> sortFieldParameters = requestContext
+        .getQueryStringParameters()
+        .get(SORT_FIELD);
+
+    if (sortFieldParameters == null || sortFieldParameters.isEmpty()) {
+      return null;
+    }
+
+    return Iterables.getFirst(sortFieldParameters, null);
+  }
+
+  protected String getCursor(final RequestContext requestContext) {
+    checkNotNull(requestContext, "requestContext");
+
+    return Iterables.getFirst(
+        requestContext
+            .getQueryStringParameters()
+            .get(CURSOR),
+        null);
+  }
+
+  protected boolean getSortDescending(final RequestContext requestContext) {
+    checkNotNull(requestContext, "requestContext");
+
+    final ImmutableCollection<String> sortDirectionParameters = requestContext
+        .getQueryStringParameters()
+        .get(SORT_DIR);
+
+    // default to ascending
+    return !(sortDirectionParameters == null ||
+        SORT_DIR_ASC.equalsIgnoreCase(Iterables.getFirst(
+            sortDirectionParameters,
+            SORT_DIR_ASC)));
+  }
+
+  protected Integer getItemsPerPage(final RequestContext requestContext) {
+    checkNotNull(requestContext, "requestContext");
+
+    final ImmutableCollection<String> perPageParameters = requestContext
+        .getQueryStringParameters()
+        .get(PER_PAGE);
+
+    if (perPageParameters == null || perPageParameters.isEmpty()) {
+      return defaultPerPage;
+    }
+
+    final String perPageString = Iterables.getFirst(perPageParameters, "");
+
+    final Integer perPage = Ints.tryParse(perPageString == null ? "" : perPageString);
+
+    return perPage == null || perPage < 1 ? defaultPerPage : perPage;
+  }
+
+  protected Integer getPageNum(final RequestContext requestContext) {
+    checkNotNull(requestContext, "requestContext");
+
+    final ImmutableCollection<String> pageParameters = requestContext
+        .getQueryStringParameters()
+        .get(PAGE);
+
+    if (pageParameters == null || pageParameters.isEmpty()) {
+      return null;
+    }
+
+    final String pageString = Iterables.getFirst(pageParameters, null);
+
+    return pageString == null ? null : Ints.tryParse(pageString);
+  }
+
+  protected ImmutableMap<String, String> getPropertyFilter(final RequestContext requestContext) {
+    checkNotNull(requestContext, "requestContext");
+
+    ImmutableCollection<String> filtersParameters = requestContext
+        .getQueryStringParameters()
+        .get(FILTERS);
+
+    if (filtersParameters == null || filtersParameters.isEmpty()) {
+      return ImmutableMap.of();
+    }
+
+    final String filterJson = Iterables.getFirst(filtersParameters, "");
+
+    if (StringTools.isNullOrEmpty(filterJson)) {
+      return ImmutableMap.of();
+    }
+
+    try {
+      final Map filterMap = getDefaultSerializer()
+          .getObjectMapper()
+          .readValue(filterJson, Map.class);
+
+      final HashMap<String, String> results = new HashMap<>();
+
+      for (Object keyObject : filterMap.keySet()) {
+
+        if (keyObject instanceof String) {
+
+          final String key = ((String) keyObject).trim().toLowerCase();
+
+          if (key.isEmpty()) {
+            continue;
+          }
+
+          results.put(key, String.valueOf(filterMap.get(keyObject)));
+        }
+      }
+
+      return ImmutableMap.copyOf(results);
+
+    } catch (IOException e) {
+      LogTools.warn("Failed to deserialize filter: {0}", filterJson);
+    }
+
+    return ImmutableMap.of();
+  }
+
+  protected ContentTypeSerializer<V> findSerializer(final ContentType contentType) {
+    return getContentTypeSerializers()
+        .getOrDefault(contentType.getText(),
+            getDefaultSerializer());
+
+  }
+
+  protected ContentTypeSerializer<V> findAcceptSerializer(final RequestContext requestContext) {
+    return findSerializer(ContentType.fromString(
+        requestContext.getHttpHeaders().get(HttpHeaderNames.ACCEPT)));
+  }
+
+  protected V deserializeRequestItem(final RequestContext requestContext) {
+    final ContentType contentType = RequestContextTools.findContentType(requestContext);
+
+    final ContentTypeSerializer<V> serializer = findSerializer(contentType);
+
+    return RequestContextTools.deserializeRequestBody(
+        requestContext,
+        serializer
+    );
+  }
+
+  protected boolean isBulkRequest(final RequestContext requestContext) {
+    return RequestContextTools.isArrayRequestBody(
+        requestContext,
+        findSerializer(RequestContextTools.findContentType(requestContext)));
+  }
+
+  protected List<V> deserializeRequestItems(final RequestContext requestContext) {
+    final ContentType contentType = RequestContextTools.findContentType(requestContext);
+
+    final ContentTypeSerializer<V> serializer = findSerializer(contentType);
+
+    return RequestContextTools.deserializeRequestBodyList(
+        requestContext,
+        serializer
+    );
+  }
+
+  // A bulk PUT carries no key in its path, so handlers that support it must
+  // be able to read the key from the item itself, through withItemKey or by
+  // overriding this
+  protected K keyFromItem(final V item) {
+    return itemKeyFunction == null ? null : itemKeyFunction.apply(item);
+  }
+
+  protected boolean isBulkUpdateSupported() {
+    return itemKeyFunction != null || keyFromItemOverridden;
+  }
+
+  // Returns null when any item has no key or two items share one, either
+  // would leave the response with fewer results than the request had items
+  protected LinkedHashMap<K, V> keyItems(final List<V> items) {
+    final LinkedHashMap<K, V> keyedItems = new LinkedHashMap<>();
+
+    for (V item : items) {
+      final K key = item == null ? null : keyFromItem(item);
+
+      if (key == null || keyedItems.put(key, item) != null) {
+        return null;
+      }
+    }
+
+    return keyedItems;
+  }
+
+  // Subclasses with a concrete item type override keyFromItem through a
+  // bridge method, which still takes an Object
+  private static boolean overridesKeyFromItem(final Class<?> handlerClass) {
+    for (Class<?> type = handlerClass;
+        type != null && type != AbstractRESTRequestHandler.class;
+        type = type.getSuperclass()) {
+      try {
+        type.getDeclaredMethod("keyFromItem", Object.class);
+        return true;
+      } catch (NoSuchMethodException e) {
+        // keep looking in the superclass
+      }
+    }
+
+    return false;
+  }
+
+  @Override
+  public boolean isHealthCheck(RequestContext requestContext) {
+    for (String pathPart : requestContext.getRequestPath().reverse()) {
+      if ("health-check".equalsIgnoreCase(pathPart)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,127 @@
+package org.granite.rest.handler;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.nio.ByteBuffer;
+import org.granite.rest.Response;
+import org.granite.rest.model.RequestContext;
+
+public class ETagTools {
+
+  private final static HashFunction CONTENT_HASH = Hashing.murmur3_128();
+  private final static Splitter ETAG_LIST_SPLITTER = Splitter
+      .on(',')
+      .omitEmptyStrings()
+      .trimResults();
+  private final static CharMatcher QUOTE = CharMatcher.is('"');
+
+  // A provider version identifies the item, not its encoding, so the
+  // content type is part of the tag
+  public static String fromVersion(final String version, final String contentType) {
+    if (version == null) {
+      return null;
+    }
+
+    return "\"" + QUOTE.removeFrom(version) + ":" + contentType + "\"";
+  }
+
+  public static String fromContent(final ByteBuf content) {
+    checkNotNull(content, "content");
+
+    final Hasher hasher = CONTENT_HASH.newHasher();
+
+    for (ByteBuffer byteBuffer : content.nioBuffers()) {
+      hasher.putBytes(byteBuffer);
+    }
+
+    return "\"" + Long.toHexString(hasher.hash().asLong()) + "\"";
+  }
+
+  public static boolean isNotModified(final RequestContext requestContext, final String etag) {
+    checkNotNull(requestContext, "requestContext");
+
+    if (etag == null) {
+      return false;
+    }
+
+    final String ifNoneMatch = requestContext
+        .getHttpHeaders()
+        .get(HttpHeaderNames.IF_NONE_MATCH);
+
+    if (ifNoneMatch == null) {
+      return false;
+    }
+
+    // If-None-Match uses the weak comparison, so W/ prefixes are ignored
+    final String opaqueTag = stripWeak(etag);
+
+    for (String candidate : ETAG_LIST_SPLITTER.split(ifNoneMatch)) {
+      if ("*".equals(candidate) || opaqueTag.equals(stripWeak(candidate))) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Tags a successful response with etag, or with a hash of its body when etag is null and
+   * hashContent is set. Returns a 304 instead when the client already holds that tag.
+   */
+  public static HttpResponse applyETag(
+      final HttpResponse httpResponse,
+      final String etag,
+      final RequestContext requestContext,
+      final boolean hashContent) {
+
+    if (httpResponse == null || !HttpResponseStatus.OK.equals(httpResponse.status())) {
+      return httpResponse;
+    }
+
+    String responseETag = etag;
+
+    if (responseETag == null && hashContent && httpResponse instanceof FullHttpResponse) {
+      responseETag = fromContent(((FullHttpResponse) httpResponse).content());
+    }
+
+    if (responseETag == null) {
+      return httpResponse;
+    }
+
+    if (isNotModified(requestContext, responseETag)) {
+      if (httpResponse instanceof FullHttpResponse) {
+        ((FullHttpResponse) httpResponse).release();
+      }
+
+      return notModified(responseETag);
+    }
+
+    httpResponse.headers().set(HttpHeaderNames.ETAG, responseETag);
+
+    return httpResponse;
+  }
+
+  public static HttpResponse notModified(final String etag) {
+    checkNotNull(etag, "etag");
+
+    final HttpResponse httpResponse = Response.NOT_MODIFIED();
+
+    httpResponse.headers().set(HttpHeaderNames.ETAG, etag);
+
+    return httpResponse;
+  }
+
+  private static String stripWeak(final String etag) {
+    return etag.startsWith("W/") ? etag.substring(2) : etag;
+  }
+}
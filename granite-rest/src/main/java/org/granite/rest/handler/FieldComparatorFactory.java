@@ -0,0 +1,279 @@
+package org.granite.rest.handler;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import org.granite.log.LogTools;
+
+/**
+ * Builds comparators for the properties of an item class. Getters are bound once through
+ * LambdaMetafactory so a comparison is a plain interface call, public fields are read through
+ * exactly typed method handles. int/long/double properties are compared without boxing.
+ * Comparators are cached per property name and direction.
+ */
+public class FieldComparatorFactory<V> {
+
+  private final static MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  private final ImmutableMap<String, Comparator<V>> ascendingComparators;
+  private final ConcurrentHashMap<String, Comparator<V>> descendingComparators =
+      new ConcurrentHashMap<>();
+
+  public FieldComparatorFactory(final Class<V> itemClass) {
+    this.ascendingComparators = buildComparators(checkNotNull(itemClass, "itemClass"));
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <V> FieldComparatorFactory<V> fromType(final Type itemType) {
+    if (itemType instanceof Class) {
+      return new FieldComparatorFactory<>((Class<V>) itemType);
+    }
+
+    if (itemType instanceof ParameterizedType
+        && ((ParameterizedType) itemType).getRawType() instanceof Class) {
+      return new FieldComparatorFactory<>(
+          (Class<V>) ((ParameterizedType) itemType).getRawType());
+    }
+
+    return new FieldComparatorFactory<>((Class<V>) Object.class);
+  }
+
+  // Returns null when the item class has no comparable property by that name
+  public Comparator<V> getComparator(final String fieldName, final boolean descending) {
+    if (fieldName == null) {
+      return null;
+    }
+
+    final String key = fieldName.trim().toLowerCase();
+
+    final Comparator<V> comparator = ascendingComparators.get(key);
+
+    if (comparator == null || !descending) {
+      return comparator;
+    }
+
+    return descendingComparators.computeIfAbsent(key, ignored -> comparator.reversed());
+  }
+
+  public boolean hasField(final String fieldName) {
+    return fieldName != null && ascendingComparators.containsKey(fieldName.trim().toLowerCase());
+  }
+
+  private static <V> ImmutableMap<String, Comparator<V>> buildComparators(
+      final Class<V> itemClass) {
+    final HashMap<String, Comparator<V>> comparators = new HashMap<>();
+
+    if (!Modifier.isPublic(itemClass.getModifiers())) {
+      return ImmutableMap.of();
+    }
+
+    for (Field field : itemClass.getFields()) {
+      if (Modifier.isStatic(field.getModifiers())) {
+        continue;
+      }
+
+      try {
+        final Comparator<V> comparator = createComparator(
+            itemClass,
+            field.getType(),
+            LOOKUP.unreflectGetter(field),
+            false);
+
+        if (comparator != null) {
+          comparators.put(field.getName().toLowerCase(), comparator);
+        }
+      } catch (Throwable e) {
+        LogTools.warn("Cannot sort on field {0}: {1}", field.getName(), e.getMessage());
+      }
+    }
+
+    // getters win over public fields of the same name
+    for (Method method : itemClass.getMethods()) {
+      final String propertyName = propertyName(method);
+
+      if (propertyName == null) {
+        continue;
+      }
+
+      try {
+        final Comparator<V> comparator = createComparator(
+            itemClass,
+            method.getReturnType(),
+            LOOKUP.unreflect(method),
+            true);
+
+        if (comparator != null) {
+          comparators.put(propertyName, comparator);
+        }
+      } catch (Throwable e) {
+        LogTools.warn("Cannot sort on property {0}: {1}",
+            method.getName(),
+            Throwables.getRootCause(e).getMessage());
+      }
+    }
+
+    return ImmutableMap.copyOf(comparators);
+  }
+
+  private static String propertyName(final Method method) {
+    if (Modifier.isStatic(method.getModifiers())
+        || method.getParameterCount() != 0
+        || method.getReturnType() == void.class
+        || method.getDeclaringClass() == Object.class) {
+      return null;
+    }
+
+    final String name = method.getName();
+
+    if (name.startsWith("get") && name.length() > 3) {
+      return name.substring(3).toLowerCase();
+    }
+
+    if (name.startsWith("is") && name.length() > 2
+        && (method.getReturnType() == boolean.class || method.getReturnType() == Boolean.class)) {
+      return name.substring(2).toLowerCase();
+    }
+
+    return null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <V> Comparator<V> createComparator(
+      final Class<V> itemClass,
+      final Class<?> propertyType,
+      final MethodHandle getter,
+      final boolean canBindLambda) throws Throwable {
+
+    if (propertyType == int.class || propertyType == short.class
+        || propertyType == byte.class || propertyType == char.class) {
+      final MethodHandle exactGetter = exactType(getter, int.class);
+      final ToIntFunction<V> accessor = canBindLambda
+          ? (ToIntFunction<V>) bind(ToIntFunction.class, "applyAsInt", int.class, itemClass, getter)
+          : item -> invokeInt(exactGetter, item);
+      return Comparator.comparingInt(accessor);
+    }
+
+    if (propertyType == long.class) {
+      final MethodHandle exactGetter = exactType(getter, long.class);
+      final ToLongFunction<V> accessor = canBindLambda
+          ? (ToLongFunction<V>) bind(ToLongFunction.class, "applyAsLong", long.class, itemClass,
+          getter)
+          : item -> invokeLong(exactGetter, item);
+      return Comparator.comparingLong(accessor);
+    }
+
+    if (propertyType == double.class || propertyType == float.class) {
+      final MethodHandle exactGetter = exactType(getter, double.class);
+      final ToDoubleFunction<V> accessor = canBindLambda
+          ? (ToDoubleFunction<V>) bind(ToDoubleFunction.class, "applyAsDouble", double.class,
+          itemClass, getter)
+          : item -> invokeDouble(exactGetter, item);
+      return Comparator.comparingDouble(accessor);
+    }
+
+    if (!propertyType.isPrimitive() && !Comparable.class.isAssignableFrom(propertyType)) {
+      return null;
+    }
+
+    final MethodHandle exactGetter = exactType(getter, Object.class);
+    final Function<V, Comparable<Object>> accessor = canBindLambda
+        ? (Function<V, Comparable<Object>>) bind(Function.class, "apply", Object.class, itemClass,
+        getter)
+        : item -> (Comparable<Object>) invoke(exactGetter, item);
+
+    return Comparator.comparing(accessor, Comparator.nullsFirst(Comparator.naturalOrder()));
+  }
+
+  private static Object bind(
+      final Class<?> functionalInterface,
+      final String methodName,
+      final Class<?> erasedReturnType,
+      final Class<?> itemClass,
+      final MethodHandle getter) throws Throwable {
+
+    final CallSite callSite = LambdaMetafactory.metafactory(
+        LOOKUP,
+        methodName,
+        MethodType.methodType(functionalInterface),
+        MethodType.methodType(erasedReturnType, Object.class),
+        getter,
+        MethodType.methodType(
+            erasedReturnType == Object.class
+                ? wrap(getter.type().returnType())
+                : erasedReturnType,
+            itemClass));
+
+    return callSite.getTarget().invoke();
+  }
+
+  private static Class<?> wrap(final Class<?> type) {
+    return type.isPrimitive()
+        ? MethodType.methodType(type).wrap().returnType()
+        : type;
+  }
+
+  // Widens short/byte/char to int and float to double, so the handles below
+  // can be called with invokeExact and never box the value
+  private static MethodHandle exactType(final MethodHandle getter, final Class<?> returnType) {
+    return getter.asType(MethodType.methodType(returnType, Object.class));
+  }
+
+  private static int invokeInt(final MethodHandle getter, final Object item) {
+    try {
+      return (int) getter.invokeExact(item);
+    } catch (Throwable e) {
+      Throwables.throwIfUnchecked(e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static long invokeLong(final MethodHandle getter, final Object item) {
+    try {
+      return (long) getter.invokeExact(item);
+    } catch (Throwable e) {
+      Throwables.throwIfUnchecked(e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static double invokeDouble(final MethodHandle getter, final Object item) {
+    try {
+      return (double) getter.invokeExact(item);
+    } catch (Throwable e) {
+      Throwables.throwIfUnchecked(e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static Object invoke(final MethodHandle getter, final Object item) {
+    try {
+      return (Object) getter.invokeExact(item);
+    } catch (Throwable e) {
+      Throwables.throwIfUnchecked(e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  public Map<String, Comparator<V>> getComparators() {
+    return ascendingComparators;
+  }
+}
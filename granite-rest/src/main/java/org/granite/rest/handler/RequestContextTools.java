@@ -3,7 +3,9 @@ package org.granite.rest.handler;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.base.Throwables;
+import io.netty.buffer.ByteBuf;
 import io.netty.handler.codec.http.HttpHeaderNames;
+import java.util.List;
 import org.granite.log.LogTools;
 import org.granite.rest.handler.serialzation.ContentTypeSerializer;
 import org.granite.rest.model.RequestContext;
@@ -27,7 +29,7 @@ public class RequestContextTools {
     checkNotNull(requestContext, "requestContext");
     checkNotNull(serializer, "serializer");
 
-    final byte[] requestBody = requestContext.getRequestBody();
+    final ByteBuf requestBody = requestContext.getRequestBodyBuffer();
 
     if (requestBody == null) {
       return null;
@@ -44,4 +46,37 @@ public class RequestContextTools {
     return null;
   }
 
+  public static <V> List<V> deserializeRequestBodyList(
+      final RequestContext requestContext,
+      final ContentTypeSerializer<V> serializer) {
+
+    checkNotNull(requestContext, "requestContext");
+    checkNotNull(serializer, "serializer");
+
+    final ByteBuf requestBody = requestContext.getRequestBodyBuffer();
+
+    if (requestBody == null) {
+      return null;
+    }
+
+    try {
+
+      return serializer.deserializeMany(requestBody);
+
+    } catch (Exception e) {
+      LogTools.error("Error deserializing reqest: {0}", Throwables.getStackTraceAsString(e));
+    }
+
+    return null;
+  }
+
+  public static boolean isArrayRequestBody(
+      final RequestContext requestContext,
+      final ContentTypeSerializer<?> serializer) {
+
+    checkNotNull(requestContext, "requestContext");
+    checkNotNull(serializer, "serializer");
+
+    return serializer.isArray(requestContext.getRequestBodyBuffer());
+  }
 }
@@ -0,0 +1,253 @@
+package org.granite.rest.handler;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import io.netty.handler.codec.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import org.granite.log.LogTools;
+import org.granite.rest.Response;
+import org.granite.rest.handler.serialzation.ContentTypeSerializer;
+import org.granite.rest.model.AsyncItemProvider;
+import org.granite.rest.model.AsyncRequestHandler;
+import org.granite.rest.model.Query;
+import org.granite.rest.model.RequestContext;
+
+public abstract class SimpleAsyncRESTRequestHandler<K, V> extends
+    AbstractRESTRequestHandler<K, V> implements AsyncRequestHandler {
+
+  private final AsyncItemProvider<K, V> itemProvider;
+
+  protected SimpleAsyncRESTRequestHandler(
+      final AsyncItemProvider<K, V> itemProvider
+  ) {
+    this(itemProvider, ImmutableList.of());
+  }
+
+  protected SimpleAsyncRESTRequestHandler(
+      final AsyncItemProvider<K, V> itemProvider,
+      final List<ContentTypeSerializer<V>> serializers
+  ) {
+    super(
+        checkNotNull(itemProvider, "itemProvider").getItemClass(),
+        serializers);
+
+    this.itemProvider = itemProvider;
+  }
+
+  @Override
+  public CompletionStage<HttpResponse> handleGetAsync(RequestContext requestContext) {
+    final K key = keyFromRequestContext(requestContext);
+
+    final ContentTypeSerializer<V> serializer = findAcceptSerializer(requestContext);
+
+    if (key != null) {
+      return itemProvider
+          .getVersion(key, requestContext)
+          .thenCompose(version -> {
+            final String etag = ETagTools.fromVersion(version, serializer.getContentType());
+
+            if (ETagTools.isNotModified(requestContext, etag)) {
+              return CompletableFuture.completedFuture(ETagTools.notModified(etag));
+            }
+
+            return itemProvider
+                .getOne(key, requestContext)
+                .thenApply(item -> applyETag(
+                    createGetOneResponse(item, requestContext, serializer),
+                    etag,
+                    requestContext));
+          });
+    }
+
+    final Query query = createQuery(requestContext);
+
+    return itemProvider
+        .getManyVersion(query, requestContext)
+        .thenCompose(version -> {
+          final String etag = ETagTools.fromVersion(version, serializer.getContentType());
+
+          if (ETagTools.isNotModified(requestContext, etag)) {
+            return CompletableFuture.completedFuture(ETagTools.notModified(etag));
+          }
+
+          return getMany(query, requestContext, serializer)
+              .thenApply(response -> applyETag(response, etag, requestContext));
+        });
+  }
+
+  private CompletionStage<HttpResponse> getMany(
+      final Query query,
+      final RequestContext requestContext,
+      final ContentTypeSerializer<V> serializer) {
+
+    if (!isStreamingRequest(requestContext, serializer)) {
+      return queryMany(query, requestContext, serializer);
+    }
+
+    return itemProvider
+        .streamMany(query, requestContext)
+        .thenCompose(stream -> stream != null
+            ? CompletableFuture.completedFuture(createStreamingResponse(stream, serializer))
+            : queryMany(query, requestContext, serializer));
+  }
+
+  private CompletionStage<HttpResponse> queryMany(
+      final Query query,
+      final RequestContext requestContext,
+      final ContentTypeSerializer<V> serializer) {
+    return itemProvider
+        .queryMany(query, requestContext)
+        .thenApply(items -> createGetManyResponse(items, query, requestContext, serializer));
+  }
+
+  @Override
+  public CompletionStage<HttpResponse> handlePostAsync(RequestContext requestContext) {
+
+    if (isBulkRequest(requestContext)) {
+      final List<V> items = deserializeRequestItems(requestContext);
+
+      if (items == null || items.contains(null)) {
+        return CompletableFuture.completedFuture(Response.BAD_REQUEST());
+      }
+
+      return itemProvider
+          .insertMany(items, requestContext)
+          .thenApply(results -> createBulkUpdateResponse(results, requestContext));
+    }
+
+    final V item = deserializeRequestItem(requestContext);
+
+    if (item == null) {
+      return CompletableFuture.completedFuture(Response.BAD_REQUEST());
+    }
+
+    return itemProvider
+        .insert(item, requestContext)
+        .thenApply(result -> createUpdateResponse(result, false));
+  }
+
+  @Override
+  public CompletionStage<HttpResponse> handlePutAsync(RequestContext requestContext) {
+    final K key = keyFromRequestContext(requestContext);
+
+    if (key == null && isBulkRequest(requestContext)) {
+      if (!isBulkUpdateSupported()) {
+        return CompletableFuture.completedFuture(Response.NOT_IMPLEMENTED());
+      }
+
+      final List<V> items = deserializeRequestItems(requestContext);
+
+      final Map<K, V> keyedItems = items == null ? null : keyItems(items);
+
+      if (keyedItems == null) {
+        return CompletableFuture.completedFuture(Response.BAD_REQUEST());
+      }
+
+      return itemProvider
+          .updateMany(keyedItems, requestContext)
+          .thenApply(results -> createBulkUpdateResponse(results, requestContext));
+    }
+
+    final V item = deserializeRequestItem(requestContext);
+
+    if (item == null) {
+      return CompletableFuture.completedFuture(Response.BAD_REQUEST());
+    }
+
+    return itemProvider
+        .update(key, item, requestContext)
+        .thenApply(result -> createUpdateResponse(result, true));
+  }
+
+  @Override
+  public CompletionStage<HttpResponse> handleDeleteAsync(RequestContext requestContext) {
+
+    final K key = keyFromRequestContext(requestContext);
+
+    if (key == null) {
+      return CompletableFuture.completedFuture(Response.BAD_REQUEST());
+    }
+
+    return itemProvider
+        .delete(key, requestContext)
+        .thenApply(result -> createUpdateResponse(result, true));
+  }
+
+  @Override
+  public SimpleAsyncRESTRequestHandler<K, V> withDefaultPerPage(final int perPage) {
+    super.withDefaultPerPage(perPage);
+    return this;
+  }
+
+  @Override
+  public SimpleAsyncRESTRequestHandler<K, V> withContentHashETags(
+      final boolean contentHashETags) {
+    super.withContentHashETags(contentHashETags);
+    return this;
+  }
+
+  @Override
+  public SimpleAsyncRESTRequestHandler<K, V> withParallelSortThreshold(final int parallelSortThreshold) {
+    super.withParallelSortThreshold(parallelSortThreshold);
+    return this;
+  }
+
+  @Override
+  public SimpleAsyncRESTRequestHandler<K, V> withStreamChunkSize(final int streamChunkSize) {
+    super.withStreamChunkSize(streamChunkSize);
+    return this;
+  }
+
+  @Override
+  public SimpleAsyncRESTRequestHandler<K, V> withStreamingResponses(
+      final boolean streamingResponses) {
+    super.withStreamingResponses(streamingResponses);
+    return this;
+  }
+
+  @Override
+  public SimpleAsyncRESTRequestHandler<K, V> withItemKey(final Function<V, K> itemKeyFunction) {
+    super.withItemKey(itemKeyFunction);
+    return this;
+  }
+
+  @Override
+  public SimpleAsyncRESTRequestHandler<K, V> withMaxRequestBodySize(final int maxRequestBodySize) {
+    super.withMaxRequestBodySize(maxRequestBodySize);
+    return this;
+  }
+
+  public AsyncItemProvider<K, V> getItemProvider() {
+    return itemProvider;
+  }
+
+  @Override
+  public CompletionStage<HttpResponse> isHealthyAsync(RequestContext requestContext) {
+
+    final CompletionStage<Void> healthCheck;
+
+    try {
+      healthCheck = doHealthCheck(requestContext);
+    } catch (Exception e) {
+      LogTools.error(Throwables.getStackTraceAsString(e));
+      return CompletableFuture.completedFuture(Response.INTERNAL_ERROR());
+    }
+
+    return healthCheck.handle((ignored, throwable) -> {
+      if (throwable != null) {
+        LogTools.error(Throwables.getStackTraceAsString(throwable));
+        return Response.INTERNAL_ERROR();
+      }
+
+      return createHealthyResponse();
+    });
+  }
+
+  protected abstract CompletionStage<Void> doHealthCheck(final RequestContext requestContext);
+}
@@ -2,50 +2,31 @@ package org.granite.rest.handler;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.base.Preconditions.checkState;
 
 import com.google.common.base.Throwables;
-import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Iterables;
-import com.google.common.primitives.Ints;
-import io.netty.handler.codec.http.DefaultHttpResponse;
-import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpResponse;
-import io.netty.handler.codec.http.HttpResponseStatus;
-import java.io.IOException;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import org.granite.base.StringTools;
-import org.granite.collections.ListTools;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Stream;
 import org.granite.log.LogTools;
-import org.granite.rest.ExtendedHeader;
 import org.granite.rest.Response;
 import org.granite.rest.handler.serialzation.ContentTypeSerializer;
-import org.granite.rest.handler.serialzation.JsonSerializer;
 import org.granite.rest.model.ItemProvider;
+import org.granite.rest.model.Query;
+import org.granite.rest.model.RequestBodySubscriber;
 import org.granite.rest.model.RequestContext;
-import org.granite.rest.model.RequestHandler;
-import org.granite.rest.model.UpdateResult;
+import org.granite.rest.model.StreamingRequestHandler;
 
-public abstract class SimpleRESTRequestHandler<K, V> implements
-    RequestHandler {
-
-  private final static String SORT_FIELD = "_sortField";
-  private final static String SORT_DIR = "_sortDir";
-  private final static String PAGE = "_page";
-  private final static String PER_PAGE = "_perPage";
-  private final static String FILTERS = "_filters";
-  private final static String SORT_DIR_ASC = "ASC";
-  private final HashMap<String, ContentTypeSerializer<V>> contentTypeSerializers = new HashMap<>();
+public abstract class SimpleRESTRequestHandler<K, V> extends AbstractRESTRequestHandler<K, V>
+    implements StreamingRequestHandler {
 
   private final ItemProvider<K, V> itemProvider;
-  private final JsonSerializer<V> defaultSerializer;
-
-  private int defaultPerPage = 30;
+  private int streamingInsertBatchSize = 0;
 
   protected SimpleRESTRequestHandler(
       final ItemProvider<K, V> itemProvider
@@ -57,314 +38,233 @@ public abstract class SimpleRESTRequestHandler<K, V> implements
       final ItemProvider<K, V> itemProvider,
       final List<ContentTypeSerializer<V>> serializers
   ) {
-    checkNotNull(serializers, "serializers");
-
-    this.itemProvider = checkNotNull(itemProvider, "itemProvider");
-
-    this.defaultSerializer =
-        new JsonSerializer<>(
-            checkNotNull(itemProvider, "itemProvider").getItemClass()
-        );
-
-    for (ContentTypeSerializer<V> serializer : serializers) {
-      if (!defaultSerializer.getContentType().equalsIgnoreCase(serializer.getContentType())) {
-        contentTypeSerializers.put(serializer.getContentType(), serializer);
-      }
-    }
+    super(
+        checkNotNull(itemProvider, "itemProvider").getItemClass(),
+        serializers);
 
+    this.itemProvider = itemProvider;
   }
 
   @Override
   public HttpResponse handleGet(RequestContext requestContext) {
-    final K key = keyFromRequestPath(requestContext.getRequestPath());
+    final K key = keyFromRequestContext(requestContext);
 
-    final ContentTypeSerializer<V> serializer = findSerializer(ContentType.fromString(
-        requestContext.getHttpHeaders().get(HttpHeaderNames.ACCEPT)));
+    final ContentTypeSerializer<V> serializer = findAcceptSerializer(requestContext);
 
     if (key != null) {
-      final V item = itemProvider.getOne(key, requestContext);
-
-      if (item != null) {
-        return Response.createResponse(
-            serializer.serializeOne(item),
-            HttpResponseStatus.OK,
-            serializer.getContentType()
-        );
+      final String etag = ETagTools.fromVersion(
+          itemProvider.getVersion(key, requestContext),
+          serializer.getContentType());
+
+      if (ETagTools.isNotModified(requestContext, etag)) {
+        return ETagTools.notModified(etag);
       }
-    } else {
 
-      final SubListResponse<V> items = itemProvider.getMany(
-          getPropertyFilter(requestContext),
+      return applyETag(
+          createGetOneResponse(
+              itemProvider.getOne(key, requestContext),
+              requestContext,
+              serializer),
+          etag,
           requestContext);
-
-      if (items != null) {
-
-        final DefaultHttpResponse response = Response.createResponse(
-            serializer.serializeMany(
-                sortAndPage(items.getResponseValues(), requestContext)
-            ),
-            HttpResponseStatus.OK,
-            serializer.getContentType()
-        );
-
-        ExtendedHeader.setHeader(
-            response,
-            ExtendedHeader.TotalCount,
-            items.getTotalCount()
-        );
-
-        return response;
-      }
     }
 
-    return Response.NOT_FOUND();
-  }
+    final Query query = createQuery(requestContext);
 
-  protected abstract Comparator<V> getValueComparator();
+    final String etag = ETagTools.fromVersion(
+        itemProvider.getManyVersion(query, requestContext),
+        serializer.getContentType());
 
-  private List<V> sortAndPage(final List<V> items, final RequestContext requestContext) {
-    if (items == null || items.isEmpty()) {
-      return ImmutableList.of();
+    if (ETagTools.isNotModified(requestContext, etag)) {
+      return ETagTools.notModified(etag);
     }
 
-    Comparator<V> comparator = getValueComparator();
+    if (isStreamingRequest(requestContext, serializer)) {
+      final Stream<V> items = itemProvider.streamMany(query, requestContext);
 
-    if (items.size() > 1) {
-      boolean sortDescending = getSortDescending(requestContext);
-
-      items.sort(sortDescending ? comparator.reversed() : comparator);
+      if (items != null) {
+        return applyETag(createStreamingResponse(items, serializer), etag, requestContext);
+      }
     }
 
-    final Integer pageNum = getPageNum(requestContext);
-
-    final Integer itemsPerPage = getItemsPerPage(requestContext);
-
-    if (pageNum != null) {
-      return ListTools.sublistPaging(
-          items,
-          itemsPerPage,
-          pageNum
-      );
-    } else {
-      return items;
-    }
+    return applyETag(
+        createGetManyResponse(
+            itemProvider.queryMany(query, requestContext),
+            query,
+            requestContext,
+            serializer),
+        etag,
+        requestContext);
   }
 
   @Override
   public HttpResponse handlePost(RequestContext requestContext) {
 
-    final ContentType contentType = RequestContextTools.findContentType(requestContext);
+    if (isBulkRequest(requestContext)) {
+      final List<V> items = deserializeRequestItems(requestContext);
 
-    final ContentTypeSerializer<V> serializer = findSerializer(contentType);
+      if (items == null || items.contains(null)) {
+        return Response.BAD_REQUEST();
+      }
+
+      return createBulkUpdateResponse(
+          itemProvider.insertMany(items, requestContext),
+          requestContext);
+    }
 
-    final V item = RequestContextTools.deserializeRequestBody(
-        requestContext,
-        serializer
-    );
+    final V item = deserializeRequestItem(requestContext);
 
     if (item == null) {
       return Response.BAD_REQUEST();
     }
 
-    final UpdateResult<K> result = itemProvider.insert(item, requestContext);
+    return createUpdateResponse(
+        itemProvider.insert(item, requestContext),
+        false);
+  }
 
-    checkState(result.isSuccessful(), result.getMessage());
+  // Streamed inserts are opt-in and need a serializer that can parse
+  // incrementally, which rules out MsgPack
+  @Override
+  public boolean isStreamingRequest(
+      final HttpMethod httpMethod,
+      final RequestContext requestContext) {
+
+    return streamingInsertBatchSize > 0
+        && HttpMethod.POST.equals(httpMethod)
+        && findSerializer(RequestContextTools.findContentType(requestContext))
+        .getObjectMapper()
+        .getFactory()
+        .canParseAsync();
+  }
 
-    return Response.NO_CONTENT();
+  // Batches are inserted on the dispatch executor, never on the event loop
+  // that parses the body
+  @Override
+  public RequestBodySubscriber handleStreamingRequest(
+      final HttpMethod httpMethod,
+      final RequestContext requestContext,
+      final Executor executor) {
+
+    final ContentTypeSerializer<V> serializer =
+        findSerializer(RequestContextTools.findContentType(requestContext));
+
+    return new StreamingInsertSubscriber<K, V>(
+        serializer.getObjectMapper(),
+        serializer.getItemType(),
+        items -> CompletableFuture.supplyAsync(
+            () -> itemProvider.insertMany(items, requestContext),
+            executor),
+        summary -> createBulkUpdateResponse(summary, requestContext),
+        streamingInsertBatchSize);
   }
 
   @Override
   public HttpResponse handlePut(RequestContext requestContext) {
-    final K key = keyFromRequestPath(requestContext.getRequestPath());
+    final K key = keyFromRequestContext(requestContext);
 
-    final ContentType contentType = RequestContextTools.findContentType(requestContext);
+    if (key == null && isBulkRequest(requestContext)) {
+      if (!isBulkUpdateSupported()) {
+        return Response.NOT_IMPLEMENTED();
+      }
 
-    final ContentTypeSerializer<V> serializer = findSerializer(contentType);
+      final List<V> items = deserializeRequestItems(requestContext);
 
-    final V item = RequestContextTools.deserializeRequestBody(
-        requestContext,
-        serializer
-    );
+      final Map<K, V> keyedItems = items == null ? null : keyItems(items);
 
-    if (item == null) {
-      return Response.BAD_REQUEST();
+      if (keyedItems == null) {
+        return Response.BAD_REQUEST();
+      }
+
+      return createBulkUpdateResponse(
+          itemProvider.updateMany(keyedItems, requestContext),
+          requestContext);
     }
 
-    final UpdateResult<K> result = itemProvider.update(key, item, requestContext);
+    final V item = deserializeRequestItem(requestContext);
 
-    if (!result.keyExists()) {
-      return Response.NOT_FOUND();
+    if (item == null) {
+      return Response.BAD_REQUEST();
     }
 
-    checkState(result.isSuccessful(), result.getMessage());
-
-    return Response.NO_CONTENT();
+    return createUpdateResponse(
+        itemProvider.update(key, item, requestContext),
+        true);
   }
 
   @Override
   public HttpResponse handleDelete(RequestContext requestContext) {
 
-    final K key = keyFromRequestPath(requestContext.getRequestPath());
+    final K key = keyFromRequestContext(requestContext);
 
     if (key == null) {
       return Response.BAD_REQUEST();
     }
 
-    final UpdateResult<K> result = itemProvider.delete(key, requestContext);
-
-    if (!result.keyExists()) {
-      return Response.NOT_FOUND();
-    }
-
-    checkState(result.isSuccessful(), result.getMessage());
-
-    return Response.NO_CONTENT();
-  }
-
-  private HashMap<String, ContentTypeSerializer<V>> getContentTypeSerializers() {
-    return contentTypeSerializers;
+    return createUpdateResponse(
+        itemProvider.delete(key, requestContext),
+        true);
   }
 
+  @Override
   public SimpleRESTRequestHandler<K, V> withDefaultPerPage(final int perPage) {
-    checkArgument(perPage > 0, "defaultPerPage should be a positive number");
-    this.defaultPerPage = perPage;
+    super.withDefaultPerPage(perPage);
     return this;
   }
 
-  public int getDefaultPerPage() {
-    return defaultPerPage;
+  @Override
+  public SimpleRESTRequestHandler<K, V> withContentHashETags(final boolean contentHashETags) {
+    super.withContentHashETags(contentHashETags);
+    return this;
   }
 
-  public JsonSerializer<V> getDefaultSerializer() {
-    return defaultSerializer;
+  @Override
+  public SimpleRESTRequestHandler<K, V> withParallelSortThreshold(final int parallelSortThreshold) {
+    super.withParallelSortThreshold(parallelSortThreshold);
+    return this;
   }
 
-  protected abstract K keyFromRequestPath(final List<String> keyString);
-
-  private String getSortField(final RequestContext requestContext) {
-    checkNotNull(requestContext, "requestContext");
-
-    final ImmutableCollection<String> sortFieldParameters = requestContext
-        .getQueryStringParameters()
-        .get(SORT_FIELD);
-
-    if (sortFieldParameters == null || sortFieldParameters.isEmpty()) {
-      return null;
-    }
-
-    return Iterables.getFirst(sortFieldParameters, null);
+  @Override
+  public SimpleRESTRequestHandler<K, V> withStreamChunkSize(final int streamChunkSize) {
+    super.withStreamChunkSize(streamChunkSize);
+    return this;
   }
 
-  private boolean getSortDescending(final RequestContext requestContext) {
-    checkNotNull(requestContext, "requestContext");
-
-    final ImmutableCollection<String> sortDirectionParameters = requestContext
-        .getQueryStringParameters()
-        .get(SORT_DIR);
-
-    // default to ascending
-    return !(sortDirectionParameters == null ||
-        SORT_DIR_ASC.equalsIgnoreCase(Iterables.getFirst(
-            sortDirectionParameters,
-            SORT_DIR_ASC)));
+  @Override
+  public SimpleRESTRequestHandler<K, V> withStreamingResponses(
+      final boolean streamingResponses) {
+    super.withStreamingResponses(streamingResponses);
+    return this;
   }
 
-  private Integer getItemsPerPage(final RequestContext requestContext) {
-    checkNotNull(requestContext, "requestContext");
-
-    final ImmutableCollection<String> perPageParameters = requestContext
-        .getQueryStringParameters()
-        .get(PER_PAGE);
-
-    if (perPageParameters == null || perPageParameters.isEmpty()) {
-      return defaultPerPage;
-    }
-
-    final String perPageString = Iterables.getFirst(perPageParameters, "");
-
-    final Integer perPage = Ints.tryParse(perPageString == null ? "" : perPageString);
-
-    return perPage == null || perPage < 1 ? defaultPerPage : perPage;
+  @Override
+  public SimpleRESTRequestHandler<K, V> withItemKey(final Function<V, K> itemKeyFunction) {
+    super.withItemKey(itemKeyFunction);
+    return this;
   }
 
-  private Integer getPageNum(final RequestContext requestContext) {
-    checkNotNull(requestContext, "requestContext");
-
-    final ImmutableCollection<String> pageParameters = requestContext
-        .getQueryStringParameters()
-        .get(PAGE);
-
-    if (pageParameters == null || pageParameters.isEmpty()) {
-      return null;
-    }
-
-    final String pageString = Iterables.getFirst(pageParameters, null);
-
-    return pageString == null ? null : Ints.tryParse(pageString);
+  @Override
+  public SimpleRESTRequestHandler<K, V> withMaxRequestBodySize(final int maxRequestBodySize) {
+    super.withMaxRequestBodySize(maxRequestBodySize);
+    return this;
   }
 
-  private ImmutableMap<String, String> getPropertyFilter(final RequestContext requestContext) {
-    checkNotNull(requestContext, "requestContext");
-
-    ImmutableCollection<String> filtersParameters = requestContext
-        .getQueryStringParameters()
-        .get(FILTERS);
-
-    if (filtersParameters == null || filtersParameters.isEmpty()) {
-      return ImmutableMap.of();
-    }
-
-    final String filterJson = Iterables.getFirst(filtersParameters, "");
-
-    if (StringTools.isNullOrEmpty(filterJson)) {
-      return ImmutableMap.of();
-    }
-
-    try {
-      final Map filterMap = getDefaultSerializer()
-          .getObjectMapper()
-          .readValue(filterJson, Map.class);
-
-      final HashMap<String, String> results = new HashMap<>();
-
-      for (Object keyObject : filterMap.keySet()) {
-
-        if (keyObject instanceof String) {
-
-          final String key = ((String) keyObject).trim().toLowerCase();
-
-          if (key.isEmpty()) {
-            continue;
-          }
-
-          results.put(key, String.valueOf(filterMap.get(keyObject)));
-        }
-      }
-
-      return ImmutableMap.copyOf(results);
-
-    } catch (IOException e) {
-      LogTools.warn("Failed to deserialize filter: {0}", filterJson);
-    }
-
-    return ImmutableMap.of();
+  // POSTed arrays and NDJSON bodies are parsed as they arrive and inserted
+  // batchSize items at a time, 0 turns streaming off. Only used when the
+  // InboundRequestHandler has a dispatch executor, otherwise bodies are
+  // aggregated and POSTed as before.
+  public SimpleRESTRequestHandler<K, V> withStreamingInserts(final int batchSize) {
+    checkArgument(batchSize >= 0, "batchSize should not be negative");
+    this.streamingInsertBatchSize = batchSize;
+    return this;
   }
 
-  private ContentTypeSerializer<V> findSerializer(final ContentType contentType) {
-    return getContentTypeSerializers()
-        .getOrDefault(contentType.getText(),
-            getDefaultSerializer());
-
+  public int getStreamingInsertBatchSize() {
+    return streamingInsertBatchSize;
   }
 
-  @Override
-  public boolean isHealthCheck(RequestContext requestContext) {
-    for (String pathPart : requestContext.getRequestPath().reverse()) {
-      if ("health-check".equalsIgnoreCase(pathPart)) {
-        return true;
-      }
-    }
-    return false;
+  public ItemProvider<K, V> getItemProvider() {
+    return itemProvider;
   }
 
   @Override
@@ -379,11 +279,7 @@ public abstract class SimpleRESTRequestHandler<K, V> implements
       return Response.INTERNAL_ERROR();
     }
 
-    return Response.createResponse(
-        "HEALTHY".getBytes(),
-        HttpResponseStatus.OK,
-        ContentType.TextPlain.getText()
-    );
+    return createHealthyResponse();
   }
 
   protected abstract void doHealthCheck(final RequestContext requestContext);
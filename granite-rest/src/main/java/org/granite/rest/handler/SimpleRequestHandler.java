@@ -22,6 +22,7 @@ public abstract class SimpleRequestHandler<V> implements RequestHandler {
   private final ImmutableList<ContentTypeSerializer<V>> serializers;
   private final JsonSerializer<V> defaultSerializer;
   private final ImmutableMap<String, ContentTypeSerializer<V>> contentTypeSerializers;
+  private boolean contentHashETags = false;
 
 
   public SimpleRequestHandler(
@@ -67,19 +68,44 @@ public abstract class SimpleRequestHandler<V> implements RequestHandler {
 
   protected abstract V createGetItem(RequestContext requestContext);
 
+  // A version tag for the item createGetItem would return, null if unknown
+  protected String getVersion(RequestContext requestContext) {
+    return null;
+  }
+
+  public SimpleRequestHandler<V> withContentHashETags(final boolean contentHashETags) {
+    this.contentHashETags = contentHashETags;
+    return this;
+  }
+
+  public boolean isContentHashETags() {
+    return contentHashETags;
+  }
+
   @Override
   public HttpResponse handleGet(RequestContext requestContext) {
     final ContentTypeSerializer<V> serializer = findSerializer(ContentType.fromString(
         requestContext.getHttpHeaders().get(HttpHeaderNames.ACCEPT)));
 
+    final String etag = ETagTools.fromVersion(
+        getVersion(requestContext),
+        serializer.getContentType());
+
+    if (ETagTools.isNotModified(requestContext, etag)) {
+      return ETagTools.notModified(etag);
+    }
+
     final V item = createGetItem(requestContext);
 
     if (item != null) {
-      return Response.createResponse(
-          serializer.serializeOne(item),
-          HttpResponseStatus.OK,
-          serializer.getContentType()
-      );
+      return ETagTools.applyETag(
+          Response.createResponse(
+              serializer.serializeOne(requestContext.getAllocator(), item),
+              HttpResponseStatus.OK,
+              serializer.getContentType()),
+          etag,
+          requestContext,
+          contentHashETags);
     }
 
     return Response.NOT_FOUND();
@@ -144,11 +170,7 @@ public abstract class SimpleRequestHandler<V> implements RequestHandler {
       return Response.INTERNAL_ERROR();
     }
 
-    return Response.createResponse(
-        "HEALTHY".getBytes(),
-        HttpResponseStatus.OK,
-        ContentType.TextPlain.getText()
-    );
+    return Response.HEALTHY();
   }
 
   @Override
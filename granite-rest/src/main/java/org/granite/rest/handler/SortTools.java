@@ -0,0 +1,161 @@
+package org.granite.rest.handler;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Sorting helpers that never mutate the list they are given, so providers can hand out shared
+ * snapshots. All sorts are stable.
+ */
+public class SortTools {
+
+  public final static int DEFAULT_PARALLEL_THRESHOLD = 8192;
+
+  /**
+   * Returns the whole list sorted, using a fork-join parallel sort once the list reaches
+   * parallelThreshold items.
+   */
+  @SuppressWarnings("unchecked")
+  public static <V> List<V> sort(
+      final List<V> items,
+      final Comparator<? super V> comparator,
+      final int parallelThreshold) {
+    checkNotNull(items, "items");
+    checkNotNull(comparator, "comparator");
+
+    final V[] values = (V[]) items.toArray();
+
+    if (values.length >= parallelThreshold) {
+      Arrays.parallelSort(values, comparator);
+    } else {
+      Arrays.sort(values, comparator);
+    }
+
+    return Arrays.asList(values);
+  }
+
+  /**
+   * Returns the first limit items of the sorted order. When limit is small relative to the list a
+   * bounded heap is used, which is O(n log limit) instead of sorting everything.
+   */
+  @SuppressWarnings("unchecked")
+  public static <V> List<V> sortedPrefix(
+      final List<V> items,
+      final Comparator<? super V> comparator,
+      final int limit,
+      final int parallelThreshold) {
+    checkNotNull(items, "items");
+    checkNotNull(comparator, "comparator");
+    checkArgument(limit >= 0, "limit must not be negative");
+
+    final int size = items.size();
+
+    if (limit == 0) {
+      return new ArrayList<>();
+    }
+
+    if ((long) limit * 4 >= size) {
+      final List<V> sorted = sort(items, comparator, parallelThreshold);
+      return limit >= size ? sorted : sorted.subList(0, limit);
+    }
+
+    final V[] values = (V[]) items.toArray();
+
+    // max-heap of indexes holding the best `limit` values seen so far,
+    // ties are broken on index to keep the result stable
+    final int[] heap = new int[limit];
+
+    for (int i = 0; i < limit; i++) {
+      heap[i] = i;
+      siftUp(heap, i, values, comparator);
+    }
+
+    for (int i = limit; i < values.length; i++) {
+      if (compare(values, comparator, i, heap[0]) < 0) {
+        heap[0] = i;
+        siftDown(heap, 0, limit, values, comparator);
+      }
+    }
+
+    // in-place heap sort leaves the indexes in ascending order
+    for (int end = limit - 1; end > 0; end--) {
+      final int top = heap[0];
+      heap[0] = heap[end];
+      heap[end] = top;
+      siftDown(heap, 0, end, values, comparator);
+    }
+
+    final ArrayList<V> results = new ArrayList<>(limit);
+
+    for (int index : heap) {
+      results.add(values[index]);
+    }
+
+    return results;
+  }
+
+  private static <V> int compare(
+      final V[] values,
+      final Comparator<? super V> comparator,
+      final int left,
+      final int right) {
+    final int result = comparator.compare(values[left], values[right]);
+    return result != 0 ? result : Integer.compare(left, right);
+  }
+
+  private static <V> void siftUp(
+      final int[] heap,
+      int position,
+      final V[] values,
+      final Comparator<? super V> comparator) {
+    final int index = heap[position];
+
+    while (position > 0) {
+      final int parent = (position - 1) >>> 1;
+
+      if (compare(values, comparator, index, heap[parent]) <= 0) {
+        break;
+      }
+
+      heap[position] = heap[parent];
+      position = parent;
+    }
+
+    heap[position] = index;
+  }
+
+  private static <V> void siftDown(
+      final int[] heap,
+      int position,
+      final int size,
+      final V[] values,
+      final Comparator<? super V> comparator) {
+    final int index = heap[position];
+
+    while (true) {
+      int child = (position << 1) + 1;
+
+      if (child >= size) {
+        break;
+      }
+
+      if (child + 1 < size && compare(values, comparator, heap[child + 1], heap[child]) > 0) {
+        child++;
+      }
+
+      if (compare(values, comparator, index, heap[child]) >= 0) {
+        break;
+      }
+
+      heap[position] = heap[child];
+      position = child;
+    }
+
+    heap[position] = index;
+  }
+}
@@ -0,0 +1,227 @@
+package org.granite.rest.handler;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import org.granite.base.ExceptionTools;
+import org.granite.log.LogTools;
+import org.granite.rest.Response;
+import org.granite.rest.model.BulkUpdateSummary;
+import org.granite.rest.model.RequestBodySubscriber;
+import org.granite.rest.model.UpdateResult;
+
+/**
+ * Parses a streamed body of items with Jackson's non-blocking parser and writes them in batches as
+ * they complete. The body may be a JSON array or a sequence of root level values such as NDJSON.
+ * Parsing stays on the event loop, the batches are written asynchronously one after another, and
+ * reading pauses until the batches a chunk completed have been written. Only the current item's
+ * tokens and the batches of one chunk are held in memory.
+ */
+public class StreamingInsertSubscriber<K, V> implements RequestBodySubscriber {
+
+  private final static int MAX_REPORTED_FAILURES = 100;
+
+  private final ObjectMapper objectMapper;
+  private final JavaType itemType;
+  private final Function<List<V>, CompletionStage<List<UpdateResult<K>>>> batchWriter;
+  private final Function<BulkUpdateSummary<K>, HttpResponse> responseFunction;
+  private final int batchSize;
+  private final JsonParser parser;
+  private final ByteArrayFeeder feeder;
+
+  private byte[] inputBuffer = new byte[8192];
+  private ArrayList<V> batch;
+  private TokenBuffer itemTokens = null;
+  private int itemDepth = 0;
+  private boolean started = false;
+  private boolean wrappedInArray = false;
+  // batches are written in order, the counts below are only touched by them
+  private CompletableFuture<Void> pendingWrites = CompletableFuture.completedFuture(null);
+  private long itemCount = 0L;
+  private long failedCount = 0L;
+  private final ArrayList<UpdateResult<K>> failures = new ArrayList<>();
+
+  public StreamingInsertSubscriber(
+      final ObjectMapper objectMapper,
+      final JavaType itemType,
+      final Function<List<V>, CompletionStage<List<UpdateResult<K>>>> batchWriter,
+      final Function<BulkUpdateSummary<K>, HttpResponse> responseFunction,
+      final int batchSize) {
+    checkArgument(batchSize > 0, "batchSize must be a positive number");
+
+    this.objectMapper = checkNotNull(objectMapper, "objectMapper");
+    this.itemType = checkNotNull(itemType, "itemType");
+    this.batchWriter = checkNotNull(batchWriter, "batchWriter");
+    this.responseFunction = checkNotNull(responseFunction, "responseFunction");
+    this.batchSize = batchSize;
+    this.batch = new ArrayList<>(batchSize);
+
+    try {
+      this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+    } catch (IOException e) {
+      throw ExceptionTools.checkedToRuntime(e);
+    }
+
+    this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+  }
+
+  @Override
+  public CompletionStage<Void> onContent(final ByteBuf content) {
+    final int length = content.readableBytes();
+
+    if (length == 0) {
+      return pendingWrites;
+    }
+
+    if (inputBuffer.length < length) {
+      inputBuffer = new byte[length];
+    }
+
+    content.getBytes(content.readerIndex(), inputBuffer, 0, length);
+
+    try {
+      feeder.feedInput(inputBuffer, 0, length);
+
+      readTokens();
+    } catch (IOException e) {
+      throw ExceptionTools.checkedToRuntime(e);
+    }
+
+    return pendingWrites;
+  }
+
+  @Override
+  public CompletionStage<HttpResponse> onComplete() {
+    try {
+      feeder.endOfInput();
+
+      readTokens();
+
+      if (itemTokens != null) {
+        throw new IOException("Request body ended inside an item");
+      }
+
+      writeBatch();
+
+      // a failed write fails the response, the items after it are not written
+      return pendingWrites.thenApply(ignored -> responseFunction.apply(
+          new BulkUpdateSummary<>(itemCount, failedCount, failures)));
+    } catch (IOException e) {
+      LogTools.warn("Rejected streamed request body: {0}", e.getMessage());
+
+      return CompletableFuture.completedFuture(Response.BAD_REQUEST());
+    } finally {
+      close();
+    }
+  }
+
+  @Override
+  public void onError(final Throwable cause) {
+    batch.clear();
+    close();
+  }
+
+  private void readTokens() throws IOException {
+    JsonToken token;
+
+    while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+
+      if (itemTokens == null) {
+        if (!started) {
+          started = true;
+
+          if (token == JsonToken.START_ARRAY) {
+            wrappedInArray = true;
+            continue;
+          }
+        }
+
+        if (wrappedInArray && token == JsonToken.END_ARRAY) {
+          continue;
+        }
+
+        itemTokens = new TokenBuffer(parser);
+        itemDepth = 0;
+      }
+
+      itemTokens.copyCurrentEvent(parser);
+
+      if (token.isStructStart()) {
+        itemDepth++;
+      } else if (token.isStructEnd()) {
+        itemDepth--;
+      }
+
+      if (itemDepth == 0) {
+        addItem(objectMapper.readValue(itemTokens.asParser(objectMapper), itemType));
+        itemTokens = null;
+      }
+    }
+  }
+
+  private void addItem(final V item) {
+    if (item == null) {
+      throw new IllegalArgumentException("Null items cannot be inserted");
+    }
+
+    batch.add(item);
+
+    if (batch.size() >= batchSize) {
+      writeBatch();
+    }
+  }
+
+  private void writeBatch() {
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    final List<V> items = batch;
+
+    // providers may keep the list they were given
+    batch = new ArrayList<>(batchSize);
+
+    pendingWrites = pendingWrites
+        .thenCompose(ignored -> batchWriter.apply(items))
+        .thenAccept(results -> recordResults(items, results));
+  }
+
+  private void recordResults(final List<V> items, final List<UpdateResult<K>> results) {
+    itemCount += items.size();
+
+    for (int i = 0; i < items.size(); i++) {
+      final UpdateResult<K> result = results == null || i >= results.size()
+          ? null
+          : results.get(i);
+
+      if (result == null || !result.isSuccessful()) {
+        failedCount++;
+
+        if (result != null && failures.size() < MAX_REPORTED_FAILURES) {
+          failures.add(result);
+        }
+      }
+    }
+  }
+
+  private void close() {
+    try {
+      parser.close();
+    } catch (IOException ignored) {
+    }
+  }
+}
@@ -6,10 +6,18 @@ public class SubListResponse<V> {
 
   private final int totalCount;
   private final List<V> responseValues;
+  private final boolean sortedAndPaged;
 
   public SubListResponse(int totalCount, List<V> responseValues) {
+    this(totalCount, responseValues, false);
+  }
+
+  // sortedAndPaged tells the handler the provider already applied the
+  // query's ordering and paging, so the values are returned as they are
+  public SubListResponse(int totalCount, List<V> responseValues, boolean sortedAndPaged) {
     this.totalCount = totalCount;
     this.responseValues = responseValues;
+    this.sortedAndPaged = sortedAndPaged;
   }
 
   public int getTotalCount() {
@@ -19,4 +27,8 @@ public class SubListResponse<V> {
   public List<V> getResponseValues() {
     return responseValues;
   }
+
+  public boolean isSortedAndPaged() {
+    return sortedAndPaged;
+  }
 }
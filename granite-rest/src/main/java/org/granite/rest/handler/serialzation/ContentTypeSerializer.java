@@ -1,28 +1,46 @@
 package org.granite.rest.handler.serialzation;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.stream.ChunkedInput;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.stream.Stream;
 import org.granite.base.ExceptionTools;
 
 public abstract class ContentTypeSerializer<V> {
 
   private final ObjectMapper objectMapper;
   private final TypeReference<V> itemClass;
-  private final TypeReference<List<V>> listTypeReference;
+  private final JavaType itemType;
+  private final JavaType listType;
 
   protected ContentTypeSerializer(
       final ObjectMapper objectMapper,
       final TypeReference<V> itemClass) {
     this.objectMapper = checkNotNull(objectMapper, "objectMapper");
     this.itemClass = checkNotNull(itemClass, "itemClass");
-    this.listTypeReference = new TypeReference<List<V>>() {
-    };
+    // built from the item type, a TypeReference<List<V>> would erase V and
+    // read the items back as maps
+    this.itemType = objectMapper.constructType(itemClass.getType());
+    this.listType = objectMapper
+        .getTypeFactory()
+        .constructCollectionType(List.class, itemType);
   }
 
   public abstract String getContentType();
@@ -51,6 +69,76 @@ public abstract class ContentTypeSerializer<V> {
     }
   }
 
+  public ByteBuf serializeOne(final ByteBufAllocator allocator, V item) {
+    if (item == null) {
+      return Unpooled.EMPTY_BUFFER;
+    }
+
+    return writeToBuffer(allocator, item);
+  }
+
+  public ByteBuf serializeMany(final ByteBufAllocator allocator, List<V> items) {
+    if (items == null) {
+      return Unpooled.EMPTY_BUFFER;
+    }
+
+    return writeToBuffer(allocator, items);
+  }
+
+  // Jackson encodes through its own recycled buffers straight into the
+  // allocator's buffer, so no full size byte[] copy of the payload is made
+  protected ByteBuf writeToBuffer(final ByteBufAllocator allocator, final Object value) {
+    checkNotNull(allocator, "allocator");
+
+    final ByteBuf buffer = allocator.buffer();
+
+    boolean written = false;
+
+    try {
+      objectMapper.writeValue((OutputStream) new ByteBufOutputStream(buffer), value);
+      written = true;
+    } catch (IOException e) {
+      throw ExceptionTools.checkedToRuntime(e);
+    } finally {
+      if (!written) {
+        buffer.release();
+      }
+    }
+
+    return buffer;
+  }
+
+  // Update results are written with the same encoding as the items
+  public ByteBuf serializeResults(final ByteBufAllocator allocator, final Object results) {
+    if (results == null) {
+      return Unpooled.EMPTY_BUFFER;
+    }
+
+    return writeToBuffer(allocator, results);
+  }
+
+  public ChunkedInput<ByteBuf> streamMany(final Stream<V> items, final int chunkSize) {
+    checkNotNull(items, "items");
+    checkState(isStreamable(), "%s cannot stream items", getContentType());
+
+    try {
+      return new ItemStreamChunkedInput<>(
+          items,
+          objectMapper.writerFor(itemClass),
+          true,
+          chunkSize);
+    } catch (IOException e) {
+      items.close();
+      throw ExceptionTools.checkedToRuntime(e);
+    }
+  }
+
+  // Whether streamMany can write items into the same root array that
+  // serializeMany produces
+  public boolean isStreamable() {
+    return true;
+  }
+
   public V deserializeOne(byte[] bytes) {
     if (bytes == null || bytes.length == 0) {
       return null;
@@ -69,13 +157,61 @@ public abstract class ContentTypeSerializer<V> {
     }
 
     try {
-      return objectMapper.readValue(bytes, listTypeReference);
+      return objectMapper.readValue(bytes, listType);
+    } catch (IOException e) {
+      throw ExceptionTools.checkedToRuntime(e);
+    }
+  }
+
+  public V deserializeOne(ByteBuf buffer) {
+    if (buffer == null || !buffer.isReadable()) {
+      return null;
+    }
+
+    try {
+      return objectMapper.readValue((InputStream) new ByteBufInputStream(buffer.duplicate()),
+          itemClass);
+    } catch (IOException e) {
+      throw ExceptionTools.checkedToRuntime(e);
+    }
+  }
+
+  public List<V> deserializeMany(ByteBuf buffer) {
+    if (buffer == null || !buffer.isReadable()) {
+      return ImmutableList.of();
+    }
+
+    try {
+      return objectMapper.readValue((InputStream) new ByteBufInputStream(buffer.duplicate()),
+          listType);
     } catch (IOException e) {
       throw ExceptionTools.checkedToRuntime(e);
     }
   }
 
+  // Only the first token is read, so this is cheap to call before choosing
+  // between deserializeOne and deserializeMany
+  public boolean isArray(final ByteBuf buffer) {
+    if (buffer == null || !buffer.isReadable()) {
+      return false;
+    }
+
+    try (JsonParser parser = objectMapper
+        .getFactory()
+        .createParser((InputStream) new ByteBufInputStream(buffer.duplicate()))) {
+
+      return parser.nextToken() == JsonToken.START_ARRAY;
+
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
   public ObjectMapper getObjectMapper() {
     return objectMapper;
   }
+
+  public JavaType getItemType() {
+    return itemType;
+  }
 }
@@ -0,0 +1,133 @@
+package org.granite.rest.handler.serialzation;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.stream.ChunkedInput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Encodes a stream of items into chunks of roughly chunkSize bytes. Chunks are only pulled by
+ * ChunkedWriteHandler while the channel is writable, so a slow client holds back the stream instead
+ * of the whole result building up in memory.
+ */
+public class ItemStreamChunkedInput<V> implements ChunkedInput<ByteBuf> {
+
+  private final Stream<V> items;
+  private final Iterator<V> iterator;
+  private final ChunkOutputStream outputStream = new ChunkOutputStream();
+  private final SequenceWriter sequenceWriter;
+  private final int chunkSize;
+  private boolean endOfInput = false;
+  private long progress = 0L;
+
+  public ItemStreamChunkedInput(
+      final Stream<V> items,
+      final ObjectWriter objectWriter,
+      final boolean wrapInArray,
+      final int chunkSize) throws IOException {
+    checkNotNull(objectWriter, "objectWriter");
+    checkArgument(chunkSize > 0, "chunkSize must be a positive integer");
+
+    this.items = checkNotNull(items, "items");
+    this.iterator = items.iterator();
+    this.chunkSize = chunkSize;
+    this.sequenceWriter = wrapInArray
+        ? objectWriter.writeValuesAsArray(outputStream)
+        : objectWriter.writeValues(outputStream);
+  }
+
+  @Override
+  public boolean isEndOfInput() {
+    return endOfInput;
+  }
+
+  @Override
+  public void close() {
+    endOfInput = true;
+    items.close();
+  }
+
+  @Deprecated
+  @Override
+  public ByteBuf readChunk(final ChannelHandlerContext ctx) throws Exception {
+    return readChunk(ctx.alloc());
+  }
+
+  @Override
+  public ByteBuf readChunk(final ByteBufAllocator allocator) throws Exception {
+    if (endOfInput) {
+      return null;
+    }
+
+    final ByteBuf chunk = allocator.buffer(chunkSize);
+
+    outputStream.target = chunk;
+
+    boolean filled = false;
+
+    try {
+      while (chunk.readableBytes() < chunkSize && iterator.hasNext()) {
+        sequenceWriter.write(iterator.next());
+        sequenceWriter.flush();
+      }
+
+      if (!iterator.hasNext()) {
+        // writes the closing bracket (if any) into this last chunk
+        sequenceWriter.close();
+        close();
+      }
+
+      filled = true;
+    } finally {
+      outputStream.target = null;
+
+      if (!filled) {
+        chunk.release();
+        close();
+      }
+    }
+
+    progress += chunk.readableBytes();
+
+    return chunk;
+  }
+
+  @Override
+  public long length() {
+    return -1L;
+  }
+
+  @Override
+  public long progress() {
+    return progress;
+  }
+
+  private static class ChunkOutputStream extends OutputStream {
+
+    private ByteBuf target;
+
+    @Override
+    public void write(final int b) {
+      target.writeByte(b);
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length) {
+      target.writeBytes(bytes, offset, length);
+    }
+
+    @Override
+    public void close() {
+      // the chunks are owned by the channel, not by the generator
+    }
+  }
+}
@@ -24,6 +24,13 @@ public class MsgPackSerializer<V> extends ContentTypeSerializer<V> {
     return objectMapper;
   }
 
+  // The msgpack generator holds an open array in memory until it knows the
+  // element count, so MsgPack responses are always serialized whole
+  @Override
+  public boolean isStreamable() {
+    return false;
+  }
+
   @Override
   public String getContentType() {
     return "application/x-msgpack";
@@ -0,0 +1,303 @@
+package org.granite.rest.health;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.util.ReferenceCountUtil;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.granite.log.LogTools;
+import org.granite.rest.ExtendedHeader;
+import org.granite.rest.Response;
+import org.granite.rest.model.AsyncRequestHandler;
+import org.granite.rest.model.RequestContext;
+import org.granite.rest.model.RequestHandler;
+
+/**
+ * Runs the health checks of RequestHandlers on a background thread, so probes are answered from
+ * the last result instead of reaching the backend. Handlers are checked every interval, a check
+ * that takes longer than the timeout counts as a failure. Probe responses carry the age of the
+ * result they report.
+ *
+ * <p>Until every warm-up task has completed successfully, and whenever a handler's last result is
+ * older than maxAge, probes are answered with a 503. Warm-up tasks that fail are retried on the
+ * next interval.
+ */
+public class HealthMonitor implements AutoCloseable {
+
+  private final ConcurrentHashMap<RequestHandler, HandlerHealth> handlers =
+      new ConcurrentHashMap<>();
+  private final List<Runnable> warmupTasks = new CopyOnWriteArrayList<>();
+  private final long intervalNanos;
+  private final long timeoutNanos;
+  private long maxAgeNanos;
+  private volatile boolean warm = true;
+  private ScheduledExecutorService scheduler = null;
+  private ExecutorService checkExecutor = null;
+
+  public HealthMonitor(final Duration interval, final Duration timeout) {
+    checkNotNull(interval, "interval");
+    checkNotNull(timeout, "timeout");
+    checkArgument(!interval.isNegative() && !interval.isZero(), "interval must be positive");
+    checkArgument(!timeout.isNegative() && !timeout.isZero(), "timeout must be positive");
+
+    this.intervalNanos = interval.toNanos();
+    this.timeoutNanos = timeout.toNanos();
+    this.maxAgeNanos = 3 * intervalNanos + timeoutNanos;
+  }
+
+  // Handlers are also registered by their first probe, registering them up
+  // front has them checked before traffic arrives
+  public HealthMonitor withHandler(final RequestHandler requestHandler) {
+    register(checkNotNull(requestHandler, "requestHandler"));
+    return this;
+  }
+
+  // Runs on the monitor's thread, e.g. to load caches or serialize a sample
+  // item with each serializer
+  public HealthMonitor withWarmup(final Runnable warmupTask) {
+    warmupTasks.add(checkNotNull(warmupTask, "warmupTask"));
+    warm = false;
+    return this;
+  }
+
+  // Results older than this are not trusted, by default three intervals plus
+  // the timeout
+  public HealthMonitor withMaxAge(final Duration maxAge) {
+    checkNotNull(maxAge, "maxAge");
+    checkArgument(!maxAge.isNegative() && !maxAge.isZero(), "maxAge must be positive");
+    this.maxAgeNanos = maxAge.toNanos();
+    return this;
+  }
+
+  public synchronized HealthMonitor start() {
+    checkState(scheduler == null, "HealthMonitor was already started");
+
+    scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("granite-rest-health-%d")
+        .build());
+
+    // at most one check per handler is ever running
+    checkExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("granite-rest-health-check-%d")
+        .build());
+
+    scheduler.scheduleWithFixedDelay(
+        this::runChecks,
+        0L,
+        intervalNanos,
+        TimeUnit.NANOSECONDS);
+    return this;
+  }
+
+  // The probe response for the handler, built from its last result
+  public HttpResponse getResponse(final RequestHandler requestHandler) {
+    checkNotNull(requestHandler, "requestHandler");
+
+    HandlerHealth handlerHealth = handlers.get(requestHandler);
+
+    if (handlerHealth == null) {
+      handlerHealth = register(requestHandler);
+    }
+
+    final HealthStatus status = handlerHealth.status;
+
+    if (status == null || !warm) {
+      return Response.SERVICE_UNAVAILABLE();
+    }
+
+    final long ageMillis = status.getAgeMillis();
+
+    final HttpResponse response;
+
+    if (TimeUnit.MILLISECONDS.toNanos(ageMillis) > maxAgeNanos) {
+      response = Response.SERVICE_UNAVAILABLE();
+    } else {
+      response = status.isHealthy() ? Response.HEALTHY() : Response.INTERNAL_ERROR();
+    }
+
+    response.headers().set(HttpHeaderNames.AGE, ageMillis / 1000L);
+
+    ExtendedHeader.setHeader(response, ExtendedHeader.HealthCheckAge, ageMillis);
+
+    return response;
+  }
+
+  // Null until the handler's first check has completed
+  public HealthStatus getStatus(final RequestHandler requestHandler) {
+    final HandlerHealth handlerHealth = handlers.get(requestHandler);
+
+    return handlerHealth == null ? null : handlerHealth.status;
+  }
+
+  public boolean isWarm() {
+    return warm;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      checkExecutor.shutdownNow();
+    }
+  }
+
+  private HandlerHealth register(final RequestHandler requestHandler) {
+    final HandlerHealth[] created = new HandlerHealth[1];
+
+    final HandlerHealth handlerHealth = handlers.computeIfAbsent(requestHandler, key ->
+        created[0] = new HandlerHealth(key));
+
+    // checked right away rather than on the next interval
+    synchronized (this) {
+      if (created[0] != null && scheduler != null && !scheduler.isShutdown()) {
+        scheduler.execute(() -> check(handlerHealth));
+      }
+    }
+
+    return handlerHealth;
+  }
+
+  private void runChecks() {
+    try {
+      if (!warm) {
+        runWarmup();
+      }
+
+      for (HandlerHealth handlerHealth : handlers.values()) {
+        check(handlerHealth);
+      }
+    } catch (Exception e) {
+      // an exception would cancel the schedule
+      LogTools.error(Throwables.getStackTraceAsString(e));
+    }
+  }
+
+  private void runWarmup() {
+    for (Runnable warmupTask : warmupTasks) {
+      try {
+        warmupTask.run();
+
+        warmupTasks.remove(warmupTask);
+      } catch (Exception e) {
+        LogTools.warn("Warm-up task failed, retrying in the next interval: {0}",
+            Throwables.getStackTraceAsString(e));
+      }
+    }
+
+    if (warmupTasks.isEmpty()) {
+      LogTools.info("Warm-up complete");
+
+      warm = true;
+    }
+  }
+
+  private void check(final HandlerHealth handlerHealth) {
+    if (!handlerHealth.running.compareAndSet(false, true)) {
+      // the previous check is still running, its timeout was already recorded
+      return;
+    }
+
+    CompletableFuture<HttpResponse> check;
+
+    try {
+      check = startCheck(handlerHealth.requestHandler);
+    } catch (Exception e) {
+      check = CompletableFuture.failedFuture(e);
+    }
+
+    check.whenComplete((response, throwable) -> handlerHealth.running.set(false));
+
+    check
+        .copy()
+        .orTimeout(timeoutNanos, TimeUnit.NANOSECONDS)
+        .whenComplete(handlerHealth::record);
+  }
+
+  private CompletableFuture<HttpResponse> startCheck(final RequestHandler requestHandler) {
+    final RequestContext requestContext = createRequestContext(requestHandler);
+
+    if (requestHandler instanceof AsyncRequestHandler) {
+      return ((AsyncRequestHandler) requestHandler)
+          .isHealthyAsync(requestContext)
+          .toCompletableFuture();
+    }
+
+    return CompletableFuture.supplyAsync(
+        () -> requestHandler.isHealthy(requestContext),
+        checkExecutor);
+  }
+
+  // Background checks have no probe to take a context from
+  private static RequestContext createRequestContext(final RequestHandler requestHandler) {
+    final String rootPath = requestHandler.getRootPath() == null
+        ? ""
+        : requestHandler.getRootPath();
+
+    return new RequestContext(new DefaultFullHttpRequest(
+        HTTP_1_1,
+        HttpMethod.GET,
+        (rootPath.startsWith("/") ? rootPath : "/" + rootPath) + "/health-check"));
+  }
+
+  private class HandlerHealth {
+
+    private final RequestHandler requestHandler;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile HealthStatus status = null;
+
+    private HandlerHealth(final RequestHandler requestHandler) {
+      this.requestHandler = requestHandler;
+    }
+
+    private void record(final HttpResponse response, final Throwable throwable) {
+      final HealthStatus previous = status;
+
+      if (throwable != null) {
+        final Throwable cause = throwable instanceof CompletionException
+            && throwable.getCause() != null
+            ? throwable.getCause()
+            : throwable;
+
+        status = new HealthStatus(false, cause instanceof TimeoutException
+            ? "Health check timed out after "
+            + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms"
+            : String.valueOf(cause));
+      } else {
+        final int code = response == null ? 404 : response.status().code();
+
+        ReferenceCountUtil.release(response);
+
+        status = code >= 200 && code < 300
+            ? new HealthStatus(true, null)
+            : new HealthStatus(false, "Health check answered " + code);
+      }
+
+      if (previous == null || previous.isHealthy() != status.isHealthy()) {
+        LogTools.info("{0} is {1}",
+            String.valueOf(requestHandler.getRootPath()),
+            status.toString());
+      }
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package org.granite.rest.health;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of one background health check.
+ */
+public class HealthStatus {
+
+  private final boolean healthy;
+  private final String message;
+  private final long checkedAt;
+  private final long checkedNanos;
+
+  HealthStatus(final boolean healthy, final String message) {
+    this.healthy = healthy;
+    this.message = message;
+    this.checkedAt = System.currentTimeMillis();
+    this.checkedNanos = System.nanoTime();
+  }
+
+  public boolean isHealthy() {
+    return healthy;
+  }
+
+  // Why the check failed, null when it passed
+  public String getMessage() {
+    return message;
+  }
+
+  public long getCheckedAt() {
+    return checkedAt;
+  }
+
+  public long getAgeMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - checkedNanos);
+  }
+
+  @Override
+  public String toString() {
+    return healthy ? "healthy" : "unhealthy: " + message;
+  }
+}
@@ -0,0 +1,94 @@
+package org.granite.rest.metrics;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A point in time copy of a LatencyHistogram. Values are in nanoseconds.
+ */
+public class HistogramSnapshot {
+
+  private final long[] counts;
+  private final long count;
+  private final long sum;
+  private final long max;
+
+  HistogramSnapshot(final long[] counts, final long sum, final long max) {
+    this.counts = checkNotNull(counts, "counts");
+    this.sum = sum;
+    this.max = max;
+
+    long total = 0L;
+
+    for (long bucketCount : counts) {
+      total += bucketCount;
+    }
+
+    this.count = total;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getSum() {
+    return sum;
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  public double getMean() {
+    return count == 0L ? 0.0 : (double) sum / count;
+  }
+
+  // e.g. 0.99 for the 99th percentile
+  public long getValueAtQuantile(final double quantile) {
+    checkArgument(quantile >= 0.0 && quantile <= 1.0, "quantile must be between 0 and 1");
+
+    if (count == 0L) {
+      return 0L;
+    }
+
+    final long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+
+    long seen = 0L;
+
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+
+      if (seen >= rank) {
+        return Math.min(LatencyHistogram.bucketUpperBound(i), max);
+      }
+    }
+
+    return max;
+  }
+
+  // Cumulative counts of the recorded values at or below each bound, the
+  // bounds in ascending order. A bucket that straddles a bound is counted
+  // under the next one, so a count is off by at most one bucket width.
+  public long[] getCumulativeCounts(final long[] upperBounds) {
+    checkNotNull(upperBounds, "upperBounds");
+
+    final long[] cumulativeCounts = new long[upperBounds.length];
+
+    long seen = 0L;
+    int bucket = 0;
+
+    for (int i = 0; i < upperBounds.length; i++) {
+      checkArgument(i == 0 || upperBounds[i] >= upperBounds[i - 1],
+          "upperBounds must be in ascending order");
+
+      while (bucket < counts.length
+          && LatencyHistogram.bucketUpperBound(bucket) <= upperBounds[i]) {
+        seen += counts[bucket++];
+      }
+
+      cumulativeCounts[i] = seen;
+    }
+
+    return cumulativeCounts;
+  }
+}
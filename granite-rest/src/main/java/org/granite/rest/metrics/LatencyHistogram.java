@@ -0,0 +1,65 @@
+package org.granite.rest.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of durations in nanoseconds, in the style of HdrHistogram. Every power of two
+ * is split into 32 linear buckets, so reported values are within about 3% of the recorded ones.
+ * Recording only touches atomics and may run on any number of threads at once.
+ */
+public class LatencyHistogram {
+
+  private final static int SUB_BUCKET_BITS = 5;
+  private final static int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private final static int SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+
+  // a little over 18 minutes, anything longer is counted as this
+  final static long MAX_VALUE = (1L << 40) - 1;
+  final static int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+  public void record(final long nanos) {
+    final long value = Math.min(Math.max(nanos, 0L), MAX_VALUE);
+
+    buckets.incrementAndGet(bucketIndex(value));
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  public HistogramSnapshot snapshot() {
+    final long[] counts = new long[BUCKET_COUNT];
+
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts[i] = buckets.get(i);
+    }
+
+    return new HistogramSnapshot(counts, sum.sum(), max.get());
+  }
+
+  static int bucketIndex(final long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+
+    final int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+
+    return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & SUB_BUCKET_MASK);
+  }
+
+  // Largest value that lands in the bucket
+  static long bucketUpperBound(final int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+
+    final int shift = (index >>> SUB_BUCKET_BITS) - 1;
+    final long lowerBound = (long) (SUB_BUCKET_COUNT + (index & SUB_BUCKET_MASK)) << shift;
+
+    return lowerBound + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,28 @@
+package org.granite.rest.metrics;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+public class LatencySnapshot {
+
+  private final String method;
+  private final int status;
+  private final HistogramSnapshot histogram;
+
+  LatencySnapshot(final String method, final int status, final HistogramSnapshot histogram) {
+    this.method = checkNotNull(method, "method");
+    this.status = status;
+    this.histogram = checkNotNull(histogram, "histogram");
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public HistogramSnapshot getHistogram() {
+    return histogram;
+  }
+}
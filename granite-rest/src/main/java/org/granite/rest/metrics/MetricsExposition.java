@@ -0,0 +1,138 @@
+package org.granite.rest.metrics;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.CaseFormat;
+import com.google.common.collect.ImmutableList;
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Writes a MetricsSnapshot in the Prometheus plain-text exposition format (version 0.0.4).
+ * Latencies are reported as histograms in seconds, labelled by route, method and status. Every
+ * instance reports the same fixed buckets, so quantiles can be taken over any window and across
+ * instances with histogram_quantile.
+ */
+public class MetricsExposition {
+
+  public final static String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final static String PREFIX = "granite_";
+  private final static double NANOS_PER_SECOND = 1_000_000_000.0;
+  private final static ImmutableList<String> BUCKET_BOUNDS = ImmutableList.of(
+      "0.0005", "0.001", "0.0025", "0.005", "0.01", "0.025", "0.05",
+      "0.1", "0.25", "0.5", "1", "2.5", "5", "10");
+  private final static long[] BUCKET_BOUNDS_NANOS = BUCKET_BOUNDS
+      .stream()
+      .mapToLong(bound -> new BigDecimal(bound).movePointRight(9).longValueExact())
+      .toArray();
+
+  public static String format(final MetricsSnapshot snapshot) {
+    checkNotNull(snapshot, "snapshot");
+
+    final StringBuilder builder = new StringBuilder(4096);
+
+    for (Map.Entry<String, Long> counter : snapshot.getCounters().entrySet()) {
+      final String name = metricName(counter.getKey()) + "_total";
+
+      appendType(builder, name, "counter");
+      builder.append(name).append(' ').append(counter.getValue()).append('\n');
+    }
+
+    for (Map.Entry<String, Long> gauge : snapshot.getGauges().entrySet()) {
+      final String name = metricName(gauge.getKey());
+
+      appendType(builder, name, "gauge");
+      builder.append(name).append(' ').append(gauge.getValue()).append('\n');
+    }
+
+    if (snapshot.getRoutes().isEmpty()) {
+      return builder.toString();
+    }
+
+    appendType(builder, PREFIX + "request_duration_seconds", "histogram");
+
+    for (RouteSnapshot route : snapshot.getRoutes()) {
+      for (LatencySnapshot latency : route.getLatencies()) {
+        final String labels = "route=\"" + escapeLabel(route.getRoute())
+            + "\",method=\"" + escapeLabel(latency.getMethod())
+            + "\",status=\"" + latency.getStatus() + "\"";
+        final HistogramSnapshot histogram = latency.getHistogram();
+
+        final long[] cumulativeCounts = histogram.getCumulativeCounts(BUCKET_BOUNDS_NANOS);
+
+        for (int i = 0; i < cumulativeCounts.length; i++) {
+          appendBucket(builder, labels, BUCKET_BOUNDS.get(i), cumulativeCounts[i]);
+        }
+
+        appendBucket(builder, labels, "+Inf", histogram.getCount());
+
+        builder
+            .append(PREFIX).append("request_duration_seconds_sum{").append(labels).append("} ")
+            .append(histogram.getSum() / NANOS_PER_SECOND).append('\n')
+            .append(PREFIX).append("request_duration_seconds_count{").append(labels).append("} ")
+            .append(histogram.getCount()).append('\n');
+      }
+    }
+
+    appendType(builder, PREFIX + "request_bytes_total", "counter");
+
+    for (RouteSnapshot route : snapshot.getRoutes()) {
+      builder
+          .append(PREFIX).append("request_bytes_total{route=\"")
+          .append(escapeLabel(route.getRoute())).append("\"} ")
+          .append(route.getRequestBytes()).append('\n');
+    }
+
+    appendType(builder, PREFIX + "response_bytes_total", "counter");
+
+    for (RouteSnapshot route : snapshot.getRoutes()) {
+      builder
+          .append(PREFIX).append("response_bytes_total{route=\"")
+          .append(escapeLabel(route.getRoute())).append("\"} ")
+          .append(route.getResponseBytes()).append('\n');
+    }
+
+    return builder.toString();
+  }
+
+  private static void appendBucket(
+      final StringBuilder builder,
+      final String labels,
+      final String bound,
+      final long count) {
+    builder
+        .append(PREFIX).append("request_duration_seconds_bucket{")
+        .append(labels).append(",le=\"").append(bound).append("\"} ")
+        .append(count).append('\n');
+  }
+
+  private static void appendType(final StringBuilder builder, final String name,
+      final String type) {
+    builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  // CompressionBytesSaved -> granite_compression_bytes_saved
+  private static String metricName(final String name) {
+    final String snakeCase = CaseFormat.UPPER_CAMEL.to(CaseFormat.LOWER_UNDERSCORE, name);
+
+    final StringBuilder builder = new StringBuilder(PREFIX.length() + snakeCase.length());
+
+    builder.append(PREFIX);
+
+    for (int i = 0; i < snakeCase.length(); i++) {
+      final char c = snakeCase.charAt(i);
+
+      builder.append((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_' ? c : '_');
+    }
+
+    return builder.toString();
+  }
+
+  private static String escapeLabel(final String value) {
+    return value
+        .replace("\\", "\\\\")
+        .replace("\"", "\\\"")
+        .replace("\n", "\\n");
+  }
+}
@@ -0,0 +1,49 @@
+package org.granite.rest.metrics;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A copy of a ServiceMetrics taken by ServiceMetrics.snapshot(). Each value is read independently
+ * while requests keep being recorded, so related numbers may be off by the requests in flight.
+ */
+public class MetricsSnapshot {
+
+  private final long timestamp;
+  private final ImmutableMap<String, Long> counters;
+  private final ImmutableMap<String, Long> gauges;
+  private final ImmutableList<RouteSnapshot> routes;
+
+  MetricsSnapshot(
+      final long timestamp,
+      final ImmutableMap<String, Long> counters,
+      final ImmutableMap<String, Long> gauges,
+      final ImmutableList<RouteSnapshot> routes) {
+    this.timestamp = timestamp;
+    this.counters = checkNotNull(counters, "counters");
+    this.gauges = checkNotNull(gauges, "gauges");
+    this.routes = checkNotNull(routes, "routes");
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public ImmutableMap<String, Long> getCounters() {
+    return counters;
+  }
+
+  public long getCounter(final ServiceMetrics.Counter counter) {
+    return counters.getOrDefault(counter.name(), 0L);
+  }
+
+  public ImmutableMap<String, Long> getGauges() {
+    return gauges;
+  }
+
+  public ImmutableList<RouteSnapshot> getRoutes() {
+    return routes;
+  }
+}
@@ -0,0 +1,42 @@
+package org.granite.rest.metrics;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+
+public class RouteSnapshot {
+
+  private final String route;
+  private final long requestBytes;
+  private final long responseBytes;
+  private final ImmutableList<LatencySnapshot> latencies;
+
+  RouteSnapshot(
+      final String route,
+      final long requestBytes,
+      final long responseBytes,
+      final ImmutableList<LatencySnapshot> latencies) {
+    this.route = checkNotNull(route, "route");
+    this.requestBytes = requestBytes;
+    this.responseBytes = responseBytes;
+    this.latencies = checkNotNull(latencies, "latencies");
+  }
+
+  public String getRoute() {
+    return route;
+  }
+
+  public long getRequestBytes() {
+    return requestBytes;
+  }
+
+  // Response bodies as handed to the pipeline, before any compression
+  public long getResponseBytes() {
+    return responseBytes;
+  }
+
+  // One entry per method and status seen on the route
+  public ImmutableList<LatencySnapshot> getLatencies() {
+    return latencies;
+  }
+}
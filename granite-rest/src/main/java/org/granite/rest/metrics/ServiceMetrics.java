@@ -0,0 +1,235 @@
+package org.granite.rest.metrics;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.netty.handler.codec.http.HttpMethod;
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters, gauges and per route latency histograms for one RESTService. Recording never takes a
+ * lock: the built-in counters are LongAdders indexed by Counter, and a route's histograms are
+ * created on first use and only read after that. Read everything at once through snapshot().
+ */
+public class ServiceMetrics {
+
+  public final static String UNMATCHED_ROUTE = "unmatched";
+
+  private final static ImmutableList<HttpMethod> METHODS = ImmutableList.of(
+      HttpMethod.GET,
+      HttpMethod.POST,
+      HttpMethod.PUT,
+      HttpMethod.DELETE,
+      HttpMethod.HEAD,
+      HttpMethod.OPTIONS,
+      HttpMethod.PATCH);
+
+  // any other method shares the last slot
+  private final static int METHOD_SLOTS = METHODS.size() + 1;
+  private final static int MIN_STATUS = 100;
+  private final static int STATUS_SLOTS = 500;
+
+  private final LongAdder[] counters = new LongAdder[Counter.values().length];
+  private final ConcurrentHashMap<String, LongAdder> namedCounters = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, LongSupplier> counterSuppliers =
+      new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, LongSupplier> gaugeSuppliers = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+  private final LongAccumulator lastRequestTimestamp = new LongAccumulator(Math::max, 0L);
+  private volatile long startTimestamp = 0L;
+
+  public ServiceMetrics() {
+    for (int i = 0; i < counters.length; i++) {
+      counters[i] = new LongAdder();
+    }
+  }
+
+  public void increment(final Counter counter) {
+    counters[counter.ordinal()].increment();
+  }
+
+  public void add(final Counter counter, final long delta) {
+    counters[counter.ordinal()].add(delta);
+  }
+
+  public long get(final Counter counter) {
+    return counters[counter.ordinal()].sum();
+  }
+
+  // Application counters, keep the returned adder rather than looking it up
+  // on every increment
+  public LongAdder counter(final String name) {
+    checkNotNull(name, "name");
+
+    final LongAdder counter = namedCounters.get(name);
+
+    return counter != null ? counter : namedCounters.computeIfAbsent(name, key -> new LongAdder());
+  }
+
+  // Monotonic values kept elsewhere, read when a snapshot is taken. The first
+  // supplier registered under a name is kept.
+  public ServiceMetrics registerCounter(final String name, final LongSupplier supplier) {
+    counterSuppliers.putIfAbsent(
+        checkNotNull(name, "name"),
+        checkNotNull(supplier, "supplier"));
+    return this;
+  }
+
+  public ServiceMetrics registerGauge(final String name, final LongSupplier supplier) {
+    gaugeSuppliers.putIfAbsent(
+        checkNotNull(name, "name"),
+        checkNotNull(supplier, "supplier"));
+    return this;
+  }
+
+  public void markStarted() {
+    startTimestamp = Clock.systemUTC().millis();
+  }
+
+  public void markRequestTime() {
+    lastRequestTimestamp.accumulate(Clock.systemUTC().millis());
+  }
+
+  public void recordResponse(
+      final String route,
+      final HttpMethod method,
+      final int status,
+      final long durationNanos,
+      final long requestBytes,
+      final long responseBytes) {
+
+    increment(Counter.Responses);
+
+    final RouteMetrics routeMetrics = getRouteMetrics(route == null ? UNMATCHED_ROUTE : route);
+
+    routeMetrics.requestBytes.add(requestBytes);
+    routeMetrics.responseBytes.add(responseBytes);
+    routeMetrics.getHistogram(methodSlot(method), statusSlot(status)).record(durationNanos);
+  }
+
+  public MetricsSnapshot snapshot() {
+    final Map<String, Long> counterValues = new LinkedHashMap<>();
+
+    for (Counter counter : Counter.values()) {
+      counterValues.put(counter.name(), get(counter));
+    }
+
+    new TreeMap<>(namedCounters).forEach((name, counter) ->
+        counterValues.put(name, counter.sum()));
+    new TreeMap<>(counterSuppliers).forEach((name, supplier) ->
+        counterValues.put(name, supplier.getAsLong()));
+
+    final Map<String, Long> gaugeValues = new LinkedHashMap<>();
+
+    gaugeValues.put("StartTimestamp", startTimestamp);
+    gaugeValues.put("LastRequestTimestamp", lastRequestTimestamp.get());
+
+    new TreeMap<>(gaugeSuppliers).forEach((name, supplier) ->
+        gaugeValues.put(name, supplier.getAsLong()));
+
+    final ImmutableList.Builder<RouteSnapshot> routeSnapshots = ImmutableList.builder();
+
+    new TreeMap<>(routes).forEach((route, routeMetrics) ->
+        routeSnapshots.add(routeMetrics.snapshot(route)));
+
+    return new MetricsSnapshot(
+        Clock.systemUTC().millis(),
+        ImmutableMap.copyOf(counterValues),
+        ImmutableMap.copyOf(gaugeValues),
+        routeSnapshots.build());
+  }
+
+  private RouteMetrics getRouteMetrics(final String route) {
+    final RouteMetrics routeMetrics = routes.get(route);
+
+    return routeMetrics != null
+        ? routeMetrics
+        : routes.computeIfAbsent(route, key -> new RouteMetrics());
+  }
+
+  private static int methodSlot(final HttpMethod method) {
+    for (int i = 0; i < METHODS.size(); i++) {
+      if (METHODS.get(i) == method) {
+        return i;
+      }
+    }
+
+    // methods parsed from the wire are usually the shared constants, but
+    // other codecs may create their own instances
+    final int index = METHODS.indexOf(method);
+
+    return index < 0 ? METHODS.size() : index;
+  }
+
+  private static String methodName(final int methodSlot) {
+    return methodSlot < METHODS.size() ? METHODS.get(methodSlot).name() : "OTHER";
+  }
+
+  private static int statusSlot(final int status) {
+    return Math.min(Math.max(status, MIN_STATUS), MIN_STATUS + STATUS_SLOTS - 1) - MIN_STATUS;
+  }
+
+  public enum Counter {
+    Requests,
+    Responses,
+    HiddenErrors,
+    DispatchRejected,
+    AdmissionRejected,
+    RateLimited,
+    CompressedResponses,
+    CompressionBytesSaved,
+    CompressionNanos
+  }
+
+  private static class RouteMetrics {
+
+    private final LongAdder requestBytes = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+    private final AtomicReferenceArray<LatencyHistogram> histograms =
+        new AtomicReferenceArray<>(METHOD_SLOTS * STATUS_SLOTS);
+
+    private LatencyHistogram getHistogram(final int methodSlot, final int statusSlot) {
+      final int index = methodSlot * STATUS_SLOTS + statusSlot;
+
+      final LatencyHistogram histogram = histograms.get(index);
+
+      if (histogram != null) {
+        return histogram;
+      }
+
+      histograms.compareAndSet(index, null, new LatencyHistogram());
+
+      return histograms.get(index);
+    }
+
+    private RouteSnapshot snapshot(final String route) {
+      final ImmutableList.Builder<LatencySnapshot> latencies = ImmutableList.builder();
+
+      for (int i = 0; i < histograms.length(); i++) {
+        final LatencyHistogram histogram = histograms.get(i);
+
+        if (histogram != null) {
+          latencies.add(new LatencySnapshot(
+              methodName(i / STATUS_SLOTS),
+              MIN_STATUS + i % STATUS_SLOTS,
+              histogram.snapshot()));
+        }
+      }
+
+      return new RouteSnapshot(
+          route,
+          requestBytes.sum(),
+          responseBytes.sum(),
+          latencies.build());
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package org.granite.rest.model;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import org.granite.rest.handler.SubListResponse;
+
+public interface AsyncItemProvider<K, V> {
+
+  CompletionStage<V> getOne(final K key, final RequestContext requestContext);
+
+  CompletionStage<SubListResponse<V>> getMany(final Map<String, String> propertyFilter,
+      final RequestContext requestContext);
+
+  default CompletionStage<SubListResponse<V>> queryMany(final Query query,
+      final RequestContext requestContext) {
+    return getMany(query.getPropertyFilter(), requestContext);
+  }
+
+  default CompletionStage<Stream<V>> streamMany(final Query query,
+      final RequestContext requestContext) {
+    return CompletableFuture.completedFuture(null);
+  }
+
+  default CompletionStage<String> getVersion(final K key,
+      final RequestContext requestContext) {
+    return CompletableFuture.completedFuture(null);
+  }
+
+  default CompletionStage<String> getManyVersion(final Query query,
+      final RequestContext requestContext) {
+    return CompletableFuture.completedFuture(null);
+  }
+
+  CompletionStage<UpdateResult<K>> insert(final V item, final RequestContext requestContext);
+
+  CompletionStage<UpdateResult<K>> update(final K key, final V item,
+      final RequestContext requestContext);
+
+  // The defaults chain the single item writes so they run one after another,
+  // in request order
+  default CompletionStage<List<UpdateResult<K>>> insertMany(final List<V> items,
+      final RequestContext requestContext) {
+    CompletionStage<List<UpdateResult<K>>> results =
+        CompletableFuture.completedFuture(new ArrayList<>(items.size()));
+
+    for (V item : items) {
+      results = results.thenCompose(list -> insert(item, requestContext)
+          .thenApply(result -> {
+            list.add(result);
+            return list;
+          }));
+    }
+
+    return results;
+  }
+
+  default CompletionStage<List<UpdateResult<K>>> updateMany(final Map<K, V> items,
+      final RequestContext requestContext) {
+    CompletionStage<List<UpdateResult<K>>> results =
+        CompletableFuture.completedFuture(new ArrayList<>(items.size()));
+
+    for (Map.Entry<K, V> entry : items.entrySet()) {
+      results = results.thenCompose(list -> update(entry.getKey(), entry.getValue(), requestContext)
+          .thenApply(result -> {
+            list.add(result);
+            return list;
+          }));
+    }
+
+    return results;
+  }
+
+  CompletionStage<UpdateResult<K>> delete(final K key, final RequestContext requestContext);
+
+  TypeReference<V> getItemClass();
+
+  static <K, V> AsyncItemProvider<K, V> fromSync(final ItemProvider<K, V> itemProvider) {
+    return new SyncItemProviderAdapter<>(itemProvider, null);
+  }
+
+  static <K, V> AsyncItemProvider<K, V> fromSync(
+      final ItemProvider<K, V> itemProvider,
+      final Executor executor) {
+    return new SyncItemProviderAdapter<>(itemProvider, executor);
+  }
+}
@@ -0,0 +1,48 @@
+package org.granite.rest.model;
+
+import io.netty.handler.codec.http.HttpResponse;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A RequestHandler whose work completes asynchronously. InboundRequestHandler dispatches to the
+ * async methods and writes the response once the returned stage completes. The synchronous methods
+ * default to blocking on the async ones so the handler still works anywhere a RequestHandler is
+ * expected.
+ */
+public interface AsyncRequestHandler extends RequestHandler {
+
+  CompletionStage<HttpResponse> handleGetAsync(final RequestContext requestContext);
+
+  CompletionStage<HttpResponse> handlePostAsync(final RequestContext requestContext);
+
+  CompletionStage<HttpResponse> handlePutAsync(final RequestContext requestContext);
+
+  CompletionStage<HttpResponse> handleDeleteAsync(final RequestContext requestContext);
+
+  CompletionStage<HttpResponse> isHealthyAsync(final RequestContext requestContext);
+
+  @Override
+  default HttpResponse handleGet(final RequestContext requestContext) {
+    return handleGetAsync(requestContext).toCompletableFuture().join();
+  }
+
+  @Override
+  default HttpResponse handlePost(final RequestContext requestContext) {
+    return handlePostAsync(requestContext).toCompletableFuture().join();
+  }
+
+  @Override
+  default HttpResponse handlePut(final RequestContext requestContext) {
+    return handlePutAsync(requestContext).toCompletableFuture().join();
+  }
+
+  @Override
+  default HttpResponse handleDelete(final RequestContext requestContext) {
+    return handleDeleteAsync(requestContext).toCompletableFuture().join();
+  }
+
+  @Override
+  default HttpResponse isHealthy(final RequestContext requestContext) {
+    return isHealthyAsync(requestContext).toCompletableFuture().join();
+  }
+}
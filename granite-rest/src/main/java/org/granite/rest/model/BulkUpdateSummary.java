@@ -0,0 +1,37 @@
+package org.granite.rest.model;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+
+/**
+ * The outcome of a streamed bulk write. Only failed items are listed, so the summary stays small
+ * however many items were written.
+ */
+public class BulkUpdateSummary<K> {
+
+  private final long itemCount;
+  private final long failedCount;
+  private final ImmutableList<UpdateResult<K>> failures;
+
+  public BulkUpdateSummary(
+      final long itemCount,
+      final long failedCount,
+      final List<UpdateResult<K>> failures) {
+    this.itemCount = itemCount;
+    this.failedCount = failedCount;
+    this.failures = ImmutableList.copyOf(failures);
+  }
+
+  public long getItemCount() {
+    return itemCount;
+  }
+
+  public long getFailedCount() {
+    return failedCount;
+  }
+
+  // Capped, failedCount is the real total
+  public List<UpdateResult<K>> getFailures() {
+    return failures;
+  }
+}
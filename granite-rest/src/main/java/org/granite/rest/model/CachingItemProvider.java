@@ -0,0 +1,402 @@
+package org.granite.rest.model;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import org.granite.log.LogTools;
+import org.granite.rest.handler.SubListResponse;
+import org.granite.rest.metrics.ServiceMetrics;
+
+/**
+ * Read-through cache in front of another ItemProvider's getOne. Concurrent misses on the same key
+ * share a single load, writes evict the keys they touch. Collection reads are passed straight
+ * through.
+ *
+ * <p>Every write moves its key's write generation on before and after it reaches the provider. A
+ * load or refresh only stores its result if the generation it started under is still current, so
+ * a read that raced a write never caches the value the write replaced, and a read that starts
+ * after a write never joins a load from before it. Missing items are only cached when negative
+ * caching is enabled.
+ */
+public class CachingItemProvider<K, V> implements ItemProvider<K, V> {
+
+  private final static int GENERATION_STRIPES = 1024;
+
+  private final ItemProvider<K, V> itemProvider;
+  private final Cache<K, CachedItem<V>> cache;
+  private final Set<K> refreshingKeys = ConcurrentHashMap.newKeySet();
+  private final ConcurrentHashMap<K, CompletableFuture<CachedItem<V>>> loading =
+      new ConcurrentHashMap<>();
+  // striped by key hash, a collision only costs an uncached load
+  private final AtomicLongArray writeGenerations = new AtomicLongArray(GENERATION_STRIPES);
+  private final String counterPrefix;
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+  private final LongAdder refreshCount = new LongAdder();
+  private long refreshAfterWriteNanos = 0L;
+  private long negativeTtlNanos = 0L;
+  private Executor refreshExecutor = null;
+
+  public CachingItemProvider(
+      final ItemProvider<K, V> itemProvider,
+      final long maximumSize,
+      final Duration expireAfterWrite
+  ) {
+    this(itemProvider, maximumSize, expireAfterWrite, "ItemCache");
+  }
+
+  public CachingItemProvider(
+      final ItemProvider<K, V> itemProvider,
+      final long maximumSize,
+      final Duration expireAfterWrite,
+      final String counterPrefix
+  ) {
+    checkArgument(maximumSize > 0, "maximumSize must be a positive number");
+    checkNotNull(expireAfterWrite, "expireAfterWrite");
+    checkNotNull(counterPrefix, "counterPrefix");
+
+    this.itemProvider = checkNotNull(itemProvider, "itemProvider");
+
+    this.counterPrefix = counterPrefix;
+
+    this.cache = CacheBuilder
+        .newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(expireAfterWrite)
+        .recordStats()
+        .<K, CachedItem<V>>removalListener(notification -> {
+          if (notification.wasEvicted()) {
+            evictionCount.increment();
+          }
+        })
+        .build();
+  }
+
+  public CachingItemProvider<K, V> withServiceMetrics(final ServiceMetrics serviceMetrics) {
+    checkNotNull(serviceMetrics, "serviceMetrics");
+
+    serviceMetrics
+        .registerCounter(counterPrefix + "Hits", hitCount::sum)
+        .registerCounter(counterPrefix + "Misses", missCount::sum)
+        .registerCounter(counterPrefix + "Evictions", evictionCount::sum)
+        .registerCounter(counterPrefix + "Refreshes", refreshCount::sum);
+    return this;
+  }
+
+  // Entries older than refreshAfterWrite are still served, but trigger a
+  // background reload on the executor
+  public CachingItemProvider<K, V> withRefreshAfterWrite(
+      final Duration refreshAfterWrite,
+      final Executor refreshExecutor) {
+    checkNotNull(refreshAfterWrite, "refreshAfterWrite");
+    checkArgument(!refreshAfterWrite.isNegative(), "refreshAfterWrite must not be negative");
+
+    this.refreshAfterWriteNanos = refreshAfterWrite.toNanos();
+    this.refreshExecutor = checkNotNull(refreshExecutor, "refreshExecutor");
+    return this;
+  }
+
+  // Caches missing items for negativeTtl, capped by expireAfterWrite. Off by
+  // default, a zero duration turns it off again.
+  public CachingItemProvider<K, V> withNegativeCaching(final Duration negativeTtl) {
+    checkNotNull(negativeTtl, "negativeTtl");
+    checkArgument(!negativeTtl.isNegative(), "negativeTtl must not be negative");
+
+    this.negativeTtlNanos = negativeTtl.toNanos();
+    return this;
+  }
+
+  @Override
+  public V getOne(final K key, final RequestContext requestContext) {
+    if (key == null) {
+      return itemProvider.getOne(null, requestContext);
+    }
+
+    final CachedItem<V> cachedItem = cache.getIfPresent(key);
+
+    if (cachedItem != null && (cachedItem.value != null
+        || System.nanoTime() - cachedItem.loadedNanos < negativeTtlNanos)) {
+      hitCount.increment();
+
+      refreshIfStale(key, cachedItem, requestContext);
+
+      return cachedItem.value;
+    }
+
+    missCount.increment();
+
+    return load(key, cachedItem, requestContext);
+  }
+
+  // expired is the negative entry the load replaces, if any
+  private V load(
+      final K key,
+      final CachedItem<V> expired,
+      final RequestContext requestContext) {
+    final CompletableFuture<CachedItem<V>> result = new CompletableFuture<>();
+    final CompletableFuture<CachedItem<V>> running = loading.putIfAbsent(key, result);
+
+    if (running != null) {
+      try {
+        return running.join().value;
+      } catch (CompletionException e) {
+        Throwables.throwIfUnchecked(e.getCause());
+        throw new RuntimeException(e.getCause());
+      }
+    }
+
+    try {
+      final long generation = getWriteGeneration(key);
+
+      final CachedItem<V> loaded = new CachedItem<>(itemProvider.getOne(key, requestContext));
+
+      store(key, loaded, expired, generation);
+
+      result.complete(loaded);
+
+      return loaded.value;
+    } catch (RuntimeException | Error e) {
+      result.completeExceptionally(e);
+      throw e;
+    } finally {
+      loading.remove(key, result);
+    }
+  }
+
+  // Stores a loaded item, as long as no write to the key started since the
+  // load did and the entry is still the one the load replaces. compute holds
+  // the entry's lock, so a write's invalidate cannot slip in between the
+  // check and the store.
+  private void store(
+      final K key,
+      final CachedItem<V> loaded,
+      final CachedItem<V> replacing,
+      final long generation) {
+
+    if (loaded.value == null && negativeTtlNanos == 0L) {
+      if (replacing != null) {
+        cache.asMap().remove(key, replacing);
+      }
+      return;
+    }
+
+    cache.asMap().compute(key, (ignored, current) ->
+        getWriteGeneration(key) != generation || current != replacing
+            ? current
+            : loaded);
+  }
+
+  private void refreshIfStale(
+      final K key,
+      final CachedItem<V> cachedItem,
+      final RequestContext requestContext) {
+
+    if (refreshExecutor == null
+        || System.nanoTime() - cachedItem.loadedNanos < refreshAfterWriteNanos
+        || !refreshingKeys.add(key)) {
+      return;
+    }
+
+    // the request this came from may be released before the refresh runs
+    final RequestContext refreshContext = requestContext.detach();
+
+    try {
+      refreshExecutor.execute(() -> {
+        try {
+          final long generation = getWriteGeneration(key);
+
+          store(
+              key,
+              new CachedItem<>(itemProvider.getOne(key, refreshContext)),
+              cachedItem,
+              generation);
+
+          refreshCount.increment();
+        } catch (Exception e) {
+          LogTools.warn("Failed to refresh cached item {0}: {1}",
+              String.valueOf(key),
+              Throwables.getStackTraceAsString(e));
+        } finally {
+          refreshingKeys.remove(key);
+        }
+      });
+    } catch (Exception e) {
+      refreshingKeys.remove(key);
+    }
+  }
+
+  @Override
+  public SubListResponse<V> getMany(
+      final Map<String, String> propertyFilter,
+      final RequestContext requestContext) {
+    return itemProvider.getMany(propertyFilter, requestContext);
+  }
+
+  @Override
+  public SubListResponse<V> queryMany(final Query query, final RequestContext requestContext) {
+    return itemProvider.queryMany(query, requestContext);
+  }
+
+  @Override
+  public Stream<V> streamMany(
+      final Query query,
+      final RequestContext requestContext) {
+    return itemProvider.streamMany(query, requestContext);
+  }
+
+  @Override
+  public String getVersion(final K key, final RequestContext requestContext) {
+    return itemProvider.getVersion(key, requestContext);
+  }
+
+  @Override
+  public String getManyVersion(final Query query, final RequestContext requestContext) {
+    return itemProvider.getManyVersion(query, requestContext);
+  }
+
+  // The key of an insert is only known afterwards, but a cached miss for it
+  // or a load that raced the insert is still discarded by the generation
+  // moving on with the invalidation
+  @Override
+  public UpdateResult<K> insert(final V item, final RequestContext requestContext) {
+    return invalidate(itemProvider.insert(item, requestContext));
+  }
+
+  @Override
+  public UpdateResult<K> update(final K key, final V item, final RequestContext requestContext) {
+    invalidate(key);
+
+    try {
+      return invalidate(itemProvider.update(key, item, requestContext));
+    } finally {
+      invalidate(key);
+    }
+  }
+
+  @Override
+  public List<UpdateResult<K>> insertMany(final List<V> items,
+      final RequestContext requestContext) {
+    return invalidateAll(itemProvider.insertMany(items, requestContext));
+  }
+
+  @Override
+  public List<UpdateResult<K>> updateMany(final Map<K, V> items,
+      final RequestContext requestContext) {
+    invalidateKeys(items.keySet());
+
+    try {
+      return invalidateAll(itemProvider.updateMany(items, requestContext));
+    } finally {
+      invalidateKeys(items.keySet());
+    }
+  }
+
+  @Override
+  public UpdateResult<K> delete(final K key, final RequestContext requestContext) {
+    invalidate(key);
+
+    try {
+      return invalidate(itemProvider.delete(key, requestContext));
+    } finally {
+      invalidate(key);
+    }
+  }
+
+  private UpdateResult<K> invalidate(final UpdateResult<K> result) {
+    if (result != null) {
+      invalidate(result.getUpdateKey());
+    }
+
+    return result;
+  }
+
+  private List<UpdateResult<K>> invalidateAll(final List<UpdateResult<K>> results) {
+    if (results != null) {
+      for (UpdateResult<K> result : results) {
+        invalidate(result);
+      }
+    }
+
+    return results;
+  }
+
+  private void invalidateKeys(final Iterable<K> keys) {
+    for (K key : keys) {
+      invalidate(key);
+    }
+  }
+
+  // Loads and refreshes that started before this are not stored, and reads
+  // that come after it start a load of their own instead of joining them
+  public void invalidate(final K key) {
+    if (key != null) {
+      writeGenerations.incrementAndGet(generationStripe(key));
+      loading.remove(key);
+      cache.invalidate(key);
+    }
+  }
+
+  public void invalidateAll() {
+    for (int i = 0; i < GENERATION_STRIPES; i++) {
+      writeGenerations.incrementAndGet(i);
+    }
+
+    loading.clear();
+    cache.invalidateAll();
+  }
+
+  private long getWriteGeneration(final K key) {
+    return writeGenerations.get(generationStripe(key));
+  }
+
+  private static int generationStripe(final Object key) {
+    final int hash = key.hashCode();
+
+    return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+  }
+
+  @Override
+  public TypeReference<V> getItemClass() {
+    return itemProvider.getItemClass();
+  }
+
+  public ItemProvider<K, V> getItemProvider() {
+    return itemProvider;
+  }
+
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  private static class CachedItem<V> {
+
+    private final V value;
+    private final long loadedNanos;
+
+    private CachedItem(final V value) {
+      this.value = value;
+      this.loadedNanos = System.nanoTime();
+    }
+  }
+}
@@ -1,7 +1,10 @@
 package org.granite.rest.model;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 import org.granite.rest.handler.SubListResponse;
 
 public interface ItemProvider<K, V> {
@@ -11,10 +14,61 @@ public interface ItemProvider<K, V> {
   SubListResponse<V> getMany(final Map<String, String> propertyFilter,
       final RequestContext requestContext);
 
+  // Providers backed by an index or a database can override this to apply the
+  // ordering and paging themselves and flag the result as sortedAndPaged
+  default SubListResponse<V> queryMany(final Query query,
+      final RequestContext requestContext) {
+    return getMany(query.getPropertyFilter(), requestContext);
+  }
+
+  // Providers that can produce items incrementally return a stream here, it
+  // is closed once the response has been written. Only called for unpaged
+  // queries without a sort, the items are written in the stream's order.
+  // Null means not supported.
+  default Stream<V> streamMany(final Query query,
+      final RequestContext requestContext) {
+    return null;
+  }
+
+  // Version tags let conditional GETs be answered with a 304 without loading
+  // or serializing anything. Null means the version is not known.
+  default String getVersion(final K key, final RequestContext requestContext) {
+    return null;
+  }
+
+  default String getManyVersion(final Query query, final RequestContext requestContext) {
+    return null;
+  }
+
   UpdateResult<K> insert(final V item, final RequestContext requestContext);
 
   UpdateResult<K> update(final K key, final V item, final RequestContext requestContext);
 
+  // Bulk writes, one result per item in request order. The defaults write the
+  // items one at a time, providers override them to batch the writes into a
+  // single transaction or flush.
+  default List<UpdateResult<K>> insertMany(final List<V> items,
+      final RequestContext requestContext) {
+    final ArrayList<UpdateResult<K>> results = new ArrayList<>(items.size());
+
+    for (V item : items) {
+      results.add(insert(item, requestContext));
+    }
+
+    return results;
+  }
+
+  default List<UpdateResult<K>> updateMany(final Map<K, V> items,
+      final RequestContext requestContext) {
+    final ArrayList<UpdateResult<K>> results = new ArrayList<>(items.size());
+
+    for (Map.Entry<K, V> entry : items.entrySet()) {
+      results.add(update(entry.getKey(), entry.getValue(), requestContext));
+    }
+
+    return results;
+  }
+
   UpdateResult<K> delete(final K key, final RequestContext requestContext);
 
   TypeReference<V> getItemClass();
@@ -0,0 +1,122 @@
+package org.granite.rest.model;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A request path pattern such as /items/{id}/children. Literal segments match case-insensitively,
+ * like RequestContext's request path; {name} segments match any single segment and are captured
+ * as path variables.
+ */
+public class PathTemplate {
+
+  private final static Splitter SEGMENT_SPLITTER = Splitter.on('/').omitEmptyStrings().trimResults();
+
+  private final String template;
+  // null where the segment is a variable
+  private final String[] literals;
+  private final ImmutableList<String> variableNames;
+  private final int[] variableIndexes;
+
+  private PathTemplate(
+      final String template,
+      final List<String> literals,
+      final List<String> variableNames,
+      final int[] variableIndexes) {
+    this.template = template;
+    this.literals = literals.toArray(new String[0]);
+    this.variableNames = ImmutableList.copyOf(variableNames);
+    this.variableIndexes = variableIndexes;
+  }
+
+  public static PathTemplate parse(final String template) {
+    checkNotNull(template, "template");
+
+    final List<String> segments = SEGMENT_SPLITTER.splitToList(template);
+    final List<String> literals = new ArrayList<>(segments.size());
+    final List<String> variableNames = new ArrayList<>();
+    final int[] variableIndexes = new int[segments.size()];
+
+    for (String segment : segments) {
+      if (segment.startsWith("{") && segment.endsWith("}")) {
+        final String name = segment.substring(1, segment.length() - 1).trim();
+
+        checkArgument(!name.isEmpty(), "Empty path variable in %s", template);
+        checkArgument(!variableNames.contains(name),
+            "Path variable %s appears twice in %s", name, template);
+
+        variableIndexes[variableNames.size()] = literals.size();
+        variableNames.add(name);
+        literals.add(null);
+      } else {
+        checkArgument(segment.indexOf('{') < 0 && segment.indexOf('}') < 0,
+            "Malformed path segment %s in %s", segment, template);
+
+        literals.add(segment.toLowerCase());
+      }
+    }
+
+    return new PathTemplate(
+        "/" + String.join("/", segments),
+        literals,
+        variableNames,
+        Arrays.copyOf(variableIndexes, variableNames.size()));
+  }
+
+  // The normalized template, e.g. /items/{id}
+  public String getTemplate() {
+    return template;
+  }
+
+  public int getSegmentCount() {
+    return literals.length;
+  }
+
+  public boolean isVariable(final int segmentIndex) {
+    return literals[segmentIndex] == null;
+  }
+
+  // The lower case literal, or null for a variable segment
+  public String getLiteral(final int segmentIndex) {
+    return literals[segmentIndex];
+  }
+
+  public ImmutableList<String> getVariableNames() {
+    return variableNames;
+  }
+
+  // The value captured for the variable from a path this template matched
+  public String getVariable(final String name, final List<String> requestPath) {
+    for (int i = 0; i < variableIndexes.length; i++) {
+      if (variableNames.get(i).equals(name)) {
+        return variableIndexes[i] < requestPath.size()
+            ? requestPath.get(variableIndexes[i])
+            : null;
+      }
+    }
+
+    return null;
+  }
+
+  public ImmutableMap<String, String> getVariables(final List<String> requestPath) {
+    final ImmutableMap.Builder<String, String> variables = ImmutableMap.builder();
+
+    for (int i = 0; i < variableIndexes.length && variableIndexes[i] < requestPath.size(); i++) {
+      variables.put(variableNames.get(i), requestPath.get(variableIndexes[i]));
+    }
+
+    return variables.build();
+  }
+
+  @Override
+  public String toString() {
+    return template;
+  }
+}
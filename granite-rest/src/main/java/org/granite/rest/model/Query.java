@@ -0,0 +1,74 @@
+package org.granite.rest.model;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * The filter, ordering and paging requested for a collection. Pages are numbered from 1; a null
+ * page number means the whole (sorted) collection was requested.
+ */
+public class Query {
+
+  private final ImmutableMap<String, String> propertyFilter;
+  private final String sortField;
+  private final boolean sortDescending;
+  private final Integer pageNum;
+  private final int perPage;
+  private final String cursor;
+
+  public Query(
+      final ImmutableMap<String, String> propertyFilter,
+      final String sortField,
+      final boolean sortDescending,
+      final Integer pageNum,
+      final int perPage,
+      final String cursor) {
+    checkArgument(perPage > 0, "perPage must be a positive integer");
+    this.propertyFilter = checkNotNull(propertyFilter, "propertyFilter");
+    this.sortField = sortField;
+    this.sortDescending = sortDescending;
+    this.pageNum = pageNum;
+    this.perPage = perPage;
+    this.cursor = cursor;
+  }
+
+  public ImmutableMap<String, String> getPropertyFilter() {
+    return propertyFilter;
+  }
+
+  public String getSortField() {
+    return sortField;
+  }
+
+  public boolean isSortDescending() {
+    return sortDescending;
+  }
+
+  public Integer getPageNum() {
+    return pageNum;
+  }
+
+  public int getPerPage() {
+    return perPage;
+  }
+
+  // An opaque continuation token from a previous response, for providers
+  // that page by cursor instead of by offset
+  public String getCursor() {
+    return cursor;
+  }
+
+  public boolean isPaged() {
+    return pageNum != null;
+  }
+
+  public long getOffset() {
+    return pageNum == null ? 0L : Math.max(0L, (pageNum - 1L) * perPage);
+  }
+
+  public int getLimit() {
+    return pageNum == null ? Integer.MAX_VALUE : perPage;
+  }
+}
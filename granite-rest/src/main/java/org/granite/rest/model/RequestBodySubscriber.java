@@ -0,0 +1,23 @@
+package org.granite.rest.model;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpResponse;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Receives a streamed request body as it arrives. All calls are made in order on the channel's
+ * event loop, a chunk's buffer is only valid until onContent returns. Exactly one of onComplete or
+ * onError ends the body.
+ *
+ * <p>While the stage returned by onContent is incomplete nothing more is read from the connection.
+ * Chunks decoded from data that was already read can still arrive in the meantime.
+ */
+public interface RequestBodySubscriber {
+
+  // Null or a completed stage to keep reading
+  CompletionStage<Void> onContent(final ByteBuf content);
+
+  CompletionStage<HttpResponse> onComplete();
+
+  void onError(final Throwable cause);
+}
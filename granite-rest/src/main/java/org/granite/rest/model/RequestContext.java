@@ -2,38 +2,62 @@ package org.granite.rest.model;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.QueryStringDecoder;
-import java.time.Clock;
-import java.util.List;
+import java.io.InputStream;
 
+/**
+ * The parsed view of a request handed to RequestHandlers. The path, query string and body are only
+ * parsed on first access, so requests answered before reaching a handler cost next to nothing. A
+ * context is used by one thread at a time, the lazily built values are immutable.
+ */
 public class RequestContext {
 
-  private final ImmutableList<String> requestPath;
+  private final HttpRequest httpRequest;
   private final long timestamp;
-  private final ImmutableMultimap<String, String> queryStringParameters;
   private final HttpHeaders httpHeaders;
-  private final byte[] requestBody;
+  private final ByteBufAllocator allocator;
+  private ImmutableList<String> requestPath = null;
+  private ImmutableMultimap<String, String> queryStringParameters = null;
+  private ByteBuf requestBodyBuffer = null;
+  private byte[] requestBody;
+  private PathTemplate pathTemplate = null;
 
   public RequestContext(
       final HttpRequest httpRequest
   ) {
-    checkNotNull(httpRequest, "httpRequest");
-    this.requestPath = extractRequestPath(httpRequest);
-    this.queryStringParameters = extractQueryString(httpRequest);
+    this(httpRequest, ByteBufAllocator.DEFAULT);
+  }
+
+  public RequestContext(
+      final HttpRequest httpRequest,
+      final ByteBufAllocator allocator
+  ) {
+    this.httpRequest = checkNotNull(httpRequest, "httpRequest");
+    this.allocator = checkNotNull(allocator, "allocator");
     this.httpHeaders =
         httpRequest.headers() == null ? new DefaultHttpHeaders() : httpRequest.headers();
-    this.requestBody = extractRequestBody(httpRequest);
-    this.timestamp = Clock.systemUTC().millis();
+    this.timestamp = System.currentTimeMillis();
   }
 
   public ImmutableList<String> getRequestPath() {
+    if (requestPath == null) {
+      requestPath = extractRequestPath(httpRequest);
+    }
+
     return requestPath;
   }
 
@@ -42,10 +66,51 @@ public class RequestContext {
   }
 
   public byte[] getRequestBody() {
+    if (requestBody == null) {
+      requestBody = ByteBufUtil.getBytes(getRequestBodyBuffer());
+    }
+
     return requestBody;
   }
 
+  // A read-only view over the aggregated request content. It is only valid
+  // until the response for this request has been produced.
+  public ByteBuf getRequestBodyBuffer() {
+    if (requestBodyBuffer == null) {
+      requestBodyBuffer = extractRequestBodyBuffer(httpRequest);
+    }
+
+    return requestBodyBuffer.duplicate();
+  }
+
+  public InputStream getRequestBodyStream() {
+    return new ByteBufInputStream(getRequestBodyBuffer());
+  }
+
+  // Set by Router to the template the request path matched
+  public void setPathTemplate(final PathTemplate pathTemplate) {
+    this.pathTemplate = pathTemplate;
+  }
+
+  public PathTemplate getPathTemplate() {
+    return pathTemplate;
+  }
+
+  // The path segment captured by a {name} in the matched template, lower
+  // cased like the rest of the request path
+  public String getPathVariable(final String name) {
+    return pathTemplate == null ? null : pathTemplate.getVariable(name, getRequestPath());
+  }
+
+  public ImmutableMap<String, String> getPathVariables() {
+    return pathTemplate == null ? ImmutableMap.of() : pathTemplate.getVariables(getRequestPath());
+  }
+
   public ImmutableMultimap<String, String> getQueryStringParameters() {
+    if (queryStringParameters == null) {
+      queryStringParameters = extractQueryString(httpRequest);
+    }
+
     return queryStringParameters;
   }
 
@@ -53,56 +118,109 @@ public class RequestContext {
     return httpHeaders;
   }
 
+  public ByteBufAllocator getAllocator() {
+    return allocator;
+  }
+
+  // A copy of the request line, headers and matched template without the
+  // body, for work that outlives the request, e.g. a background refresh
+  public RequestContext detach() {
+    final RequestContext detached = new RequestContext(
+        new DefaultFullHttpRequest(
+            httpRequest.protocolVersion(),
+            httpRequest.method(),
+            httpRequest.uri(),
+            Unpooled.EMPTY_BUFFER,
+            httpHeaders.copy(),
+            EmptyHttpHeaders.INSTANCE),
+        ByteBufAllocator.DEFAULT);
+
+    detached.setPathTemplate(pathTemplate);
+
+    return detached;
+  }
+
+  // Segments of the path before any '?', split on '/', trimmed, lower cased
+  // and without empty segments
   private static ImmutableList<String> extractRequestPath(final HttpRequest httpRequest) {
     checkNotNull(httpRequest, "httpRequest");
 
-    final Splitter slashSplitter = Splitter.on('/').omitEmptyStrings().trimResults();
+    final String uri = httpRequest.uri();
+    final int queryStart = uri.indexOf('?');
+    final int pathEnd = queryStart < 0 ? uri.length() : queryStart;
 
-    final Splitter questionSplitter = Splitter.on('?').omitEmptyStrings().trimResults();
+    ImmutableList.Builder<String> builder = null;
+    String firstSegment = null;
+    int segmentStart = 0;
 
-    final ImmutableList.Builder<String> builder = ImmutableList.builder();
+    while (segmentStart < pathEnd) {
+      int segmentEnd = uri.indexOf('/', segmentStart);
 
-    final List<String> uriParts = questionSplitter.splitToList(httpRequest.getUri());
+      if (segmentEnd < 0 || segmentEnd > pathEnd) {
+        segmentEnd = pathEnd;
+      }
 
-    if (uriParts.isEmpty()) {
-      return ImmutableList.of();
-    }
+      int start = segmentStart;
+      int end = segmentEnd;
 
-    slashSplitter
-        .splitToList(uriParts.get(0))
-        .stream()
-        .map(String::toLowerCase)
-        .forEach(builder::add);
+      while (start < end && Character.isWhitespace(uri.charAt(start))) {
+        start++;
+      }
 
-    return builder.build();
-  }
+      while (end > start && Character.isWhitespace(uri.charAt(end - 1))) {
+        end--;
+      }
 
+      if (start < end) {
+        final String segment = uri.substring(start, end).toLowerCase();
 
-  protected static byte[] extractRequestBody(final HttpRequest httpRequest) {
-    checkNotNull(httpRequest, "httpRequest");
+        // most paths are a single segment, which needs no builder
+        if (firstSegment == null) {
+          firstSegment = segment;
+        } else {
+          if (builder == null) {
+            builder = ImmutableList.<String>builder().add(firstSegment);
+          }
 
-    if (httpRequest instanceof FullHttpRequest) {
-      if (((FullHttpRequest) httpRequest).content().hasArray()) {
-        return ((FullHttpRequest) httpRequest).content().array();
+          builder.add(segment);
+        }
       }
 
-      final byte[] buf = new byte[((FullHttpRequest) httpRequest).content().readableBytes()];
+      segmentStart = segmentEnd + 1;
+    }
+
+    if (builder != null) {
+      return builder.build();
+    }
+
+    return firstSegment == null ? ImmutableList.of() : ImmutableList.of(firstSegment);
+  }
+
+  protected static byte[] extractRequestBody(final HttpRequest httpRequest) {
+    return ByteBufUtil.getBytes(extractRequestBodyBuffer(httpRequest));
+  }
 
-      ((FullHttpRequest) httpRequest).content().readBytes(buf);
+  protected static ByteBuf extractRequestBodyBuffer(final HttpRequest httpRequest) {
+    checkNotNull(httpRequest, "httpRequest");
 
-      return buf;
+    if (httpRequest instanceof FullHttpRequest) {
+      return ((FullHttpRequest) httpRequest).content().asReadOnly();
     }
 
-    return new byte[]{};
+    return Unpooled.EMPTY_BUFFER;
   }
 
   private static ImmutableMultimap<String, String> extractQueryString(
       final HttpRequest httpRequest) {
     checkNotNull(httpRequest, "httpRequest");
 
+    if (httpRequest.uri().indexOf('?') < 0) {
+      return ImmutableMultimap.of();
+    }
+
     final ImmutableMultimap.Builder<String, String> builder = ImmutableMultimap.builder();
 
-    final QueryStringDecoder queryStringDecoder = new QueryStringDecoder(httpRequest.getUri());
+    final QueryStringDecoder queryStringDecoder = new QueryStringDecoder(httpRequest.uri());
 
     queryStringDecoder
         .parameters()
@@ -17,4 +17,10 @@ public interface RequestHandler {
   HttpResponse isHealthy(final RequestContext requestContext);
 
   boolean isHealthCheck(final RequestContext requestContext);
+
+  // Largest aggregated request body this handler accepts, a negative value
+  // falls back to the server wide limit
+  default int getMaxRequestBodySize() {
+    return -1;
+  }
 }
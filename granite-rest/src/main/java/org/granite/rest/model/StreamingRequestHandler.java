@@ -0,0 +1,21 @@
+package org.granite.rest.model;
+
+import io.netty.handler.codec.http.HttpMethod;
+import java.util.concurrent.Executor;
+
+/**
+ * A RequestHandler that can take some request bodies incrementally instead of having them
+ * aggregated in memory first. Both methods only see the request line and headers, the context's
+ * request body is empty. Blocking work for the body belongs on the executor passed to
+ * handleStreamingRequest, the dispatch executor. Without a dispatch executor InboundRequestHandler
+ * never streams a body.
+ */
+public interface StreamingRequestHandler extends RequestHandler {
+
+  boolean isStreamingRequest(final HttpMethod httpMethod, final RequestContext requestContext);
+
+  RequestBodySubscriber handleStreamingRequest(
+      final HttpMethod httpMethod,
+      final RequestContext requestContext,
+      final Executor executor);
+}
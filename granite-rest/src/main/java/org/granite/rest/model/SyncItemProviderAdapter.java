@@ -0,0 +1,118 @@
+package org.granite.rest.model;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.granite.rest.handler.SubListResponse;
+
+/**
+ * Exposes a synchronous ItemProvider as an AsyncItemProvider. Without an executor the calls run on
+ * the calling thread and return completed stages, otherwise they run on the supplied executor.
+ */
+public class SyncItemProviderAdapter<K, V> implements AsyncItemProvider<K, V> {
+
+  private final ItemProvider<K, V> itemProvider;
+  private final Executor executor;
+
+  public SyncItemProviderAdapter(
+      final ItemProvider<K, V> itemProvider,
+      final Executor executor) {
+    this.itemProvider = checkNotNull(itemProvider, "itemProvider");
+    this.executor = executor;
+  }
+
+  @Override
+  public CompletionStage<V> getOne(final K key, final RequestContext requestContext) {
+    return call(() -> itemProvider.getOne(key, requestContext));
+  }
+
+  @Override
+  public CompletionStage<SubListResponse<V>> getMany(
+      final Map<String, String> propertyFilter,
+      final RequestContext requestContext) {
+    return call(() -> itemProvider.getMany(propertyFilter, requestContext));
+  }
+
+  @Override
+  public CompletionStage<SubListResponse<V>> queryMany(
+      final Query query,
+      final RequestContext requestContext) {
+    return call(() -> itemProvider.queryMany(query, requestContext));
+  }
+
+  @Override
+  public CompletionStage<Stream<V>> streamMany(
+      final Query query,
+      final RequestContext requestContext) {
+    return call(() -> itemProvider.streamMany(query, requestContext));
+  }
+
+  @Override
+  public CompletionStage<String> getVersion(final K key, final RequestContext requestContext) {
+    return call(() -> itemProvider.getVersion(key, requestContext));
+  }
+
+  @Override
+  public CompletionStage<String> getManyVersion(final Query query,
+      final RequestContext requestContext) {
+    return call(() -> itemProvider.getManyVersion(query, requestContext));
+  }
+
+  @Override
+  public CompletionStage<UpdateResult<K>> insert(final V item,
+      final RequestContext requestContext) {
+    return call(() -> itemProvider.insert(item, requestContext));
+  }
+
+  @Override
+  public CompletionStage<UpdateResult<K>> update(final K key, final V item,
+      final RequestContext requestContext) {
+    return call(() -> itemProvider.update(key, item, requestContext));
+  }
+
+  @Override
+  public CompletionStage<List<UpdateResult<K>>> insertMany(final List<V> items,
+      final RequestContext requestContext) {
+    return call(() -> itemProvider.insertMany(items, requestContext));
+  }
+
+  @Override
+  public CompletionStage<List<UpdateResult<K>>> updateMany(final Map<K, V> items,
+      final RequestContext requestContext) {
+    return call(() -> itemProvider.updateMany(items, requestContext));
+  }
+
+  @Override
+  public CompletionStage<UpdateResult<K>> delete(final K key,
+      final RequestContext requestContext) {
+    return call(() -> itemProvider.delete(key, requestContext));
+  }
+
+  @Override
+  public TypeReference<V> getItemClass() {
+    return itemProvider.getItemClass();
+  }
+
+  public ItemProvider<K, V> getItemProvider() {
+    return itemProvider;
+  }
+
+  private <T> CompletableFuture<T> call(final Supplier<T> supplier) {
+    if (executor != null) {
+      return CompletableFuture.supplyAsync(supplier, executor);
+    }
+
+    try {
+      return CompletableFuture.completedFuture(supplier.get());
+    } catch (Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package org.granite.rest.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 public class UpdateResult<K> {
 
   private final K updateKey;
@@ -18,6 +20,7 @@ public class UpdateResult<K> {
     return updateKey;
   }
 
+  @JsonProperty("keyExists")
   public boolean keyExists() {
     return keyExists;
   }
@@ -0,0 +1,211 @@
+package org.granite.rest.service;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableMap;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.granite.rest.Response;
+import org.granite.rest.ResponseTemplate;
+
+/**
+ * Sheds load before handlers run. Every route gets a concurrency limit that adapts AIMD style:
+ * requests that finish within the latency target raise it by 1 / limit while the route is using at
+ * least half of it, a slower request cuts it by the backoff ratio, at most once per latency target.
+ * Requests beyond the limit, and requests that already queued longer than maxQueueDelay, are
+ * answered with a shared 503 carrying Retry-After. Setting the minimum and maximum limit to the same
+ * value gives a fixed limit.
+ */
+public class AdmissionController {
+
+  private final ConcurrentHashMap<String, RouteLimit> routeLimits = new ConcurrentHashMap<>();
+
+  private int minLimit = 4;
+  private int initialLimit = 32;
+  private int maxLimit = 1000;
+  private double backoffRatio = 0.9;
+  private long latencyTargetNanos = Duration.ofMillis(250).toNanos();
+  private long maxQueueDelayNanos = Duration.ofMillis(100).toNanos();
+  private ResponseTemplate rejectedResponse = createRejectedResponse(Duration.ofSeconds(1));
+
+  public AdmissionController withLimits(
+      final int minLimit,
+      final int initialLimit,
+      final int maxLimit) {
+    checkArgument(minLimit > 0, "minLimit must be a positive number");
+    checkArgument(minLimit <= initialLimit && initialLimit <= maxLimit,
+        "limits must satisfy minLimit <= initialLimit <= maxLimit");
+
+    this.minLimit = minLimit;
+    this.initialLimit = initialLimit;
+    this.maxLimit = maxLimit;
+    return this;
+  }
+
+  // Handler time above this counts as overload
+  public AdmissionController withLatencyTarget(final Duration latencyTarget) {
+    checkNotNull(latencyTarget, "latencyTarget");
+    checkArgument(!latencyTarget.isNegative() && !latencyTarget.isZero(),
+        "latencyTarget must be positive");
+    this.latencyTargetNanos = latencyTarget.toNanos();
+    return this;
+  }
+
+  // Requests that waited longer than this, on the event loop or in the
+  // dispatch queue, are rejected before reaching their handler
+  public AdmissionController withMaxQueueDelay(final Duration maxQueueDelay) {
+    checkNotNull(maxQueueDelay, "maxQueueDelay");
+    checkArgument(!maxQueueDelay.isNegative() && !maxQueueDelay.isZero(),
+        "maxQueueDelay must be positive");
+    this.maxQueueDelayNanos = maxQueueDelay.toNanos();
+    return this;
+  }
+
+  public AdmissionController withBackoffRatio(final double backoffRatio) {
+    checkArgument(backoffRatio > 0 && backoffRatio < 1, "backoffRatio must be between 0 and 1");
+    this.backoffRatio = backoffRatio;
+    return this;
+  }
+
+  public AdmissionController withRetryAfter(final Duration retryAfter) {
+    checkNotNull(retryAfter, "retryAfter");
+    checkArgument(!retryAfter.isNegative(), "retryAfter must not be negative");
+    this.rejectedResponse = createRejectedResponse(retryAfter);
+    return this;
+  }
+
+  // Null if the request must be rejected, otherwise release the returned
+  // limit once the response has been written
+  public RouteLimit tryAcquire(final String route, final long queueDelayNanos) {
+    checkNotNull(route, "route");
+
+    RouteLimit routeLimit = routeLimits.get(route);
+
+    if (routeLimit == null) {
+      routeLimit = routeLimits.computeIfAbsent(route, key -> new RouteLimit());
+    }
+
+    if (queueDelayNanos > maxQueueDelayNanos) {
+      routeLimit.decrease(System.nanoTime());
+      return null;
+    }
+
+    return routeLimit.tryAcquire() ? routeLimit : null;
+  }
+
+  public HttpResponse createRejectedResponse() {
+    return rejectedResponse.newResponse();
+  }
+
+  public ImmutableMap<String, RouteLimit> getRouteLimits() {
+    return ImmutableMap.copyOf(routeLimits);
+  }
+
+  public long getInFlight() {
+    long inFlight = 0L;
+
+    for (Map.Entry<String, RouteLimit> entry : routeLimits.entrySet()) {
+      inFlight += entry.getValue().getInFlight();
+    }
+
+    return inFlight;
+  }
+
+  private static ResponseTemplate createRejectedResponse(final Duration retryAfter) {
+    return Response
+        .createTemplate("SERVICE UNAVAILABLE", HttpResponseStatus.SERVICE_UNAVAILABLE)
+        .withHeader(HttpHeaderNames.RETRY_AFTER, Math.max(1L, retryAfter.getSeconds()));
+  }
+
+  public class RouteLimit {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // the limit as the bits of a double, it grows by fractions
+    private final AtomicLong limit = new AtomicLong(Double.doubleToRawLongBits(initialLimit));
+    private volatile long lastDecreaseNanos = System.nanoTime() - latencyTargetNanos;
+
+    private RouteLimit() {
+    }
+
+    private boolean tryAcquire() {
+      if (inFlight.incrementAndGet() > getLimit()) {
+        inFlight.decrementAndGet();
+        return false;
+      }
+
+      return true;
+    }
+
+    // Takes how long the handler took, the time spent writing the response
+    // or reading a streamed body is the client's and does not count
+    public void release(final long handlerNanos) {
+      final int previousInFlight = inFlight.getAndDecrement();
+
+      if (handlerNanos > latencyTargetNanos) {
+        decrease(System.nanoTime());
+      } else if (previousInFlight * 2 >= getLimit()) {
+        increase();
+      }
+    }
+
+    // For a request that never got an answer from its handler, frees the
+    // slot without adjusting the limit
+    public void release() {
+      inFlight.decrementAndGet();
+    }
+
+    public int getLimit() {
+      return (int) Double.longBitsToDouble(limit.get());
+    }
+
+    public int getInFlight() {
+      return inFlight.get();
+    }
+
+    private void increase() {
+      long current;
+      double value;
+
+      do {
+        current = limit.get();
+        value = Double.longBitsToDouble(current);
+
+        if (value >= maxLimit) {
+          return;
+        }
+      } while (!limit.compareAndSet(current,
+          Double.doubleToRawLongBits(Math.min(maxLimit, value + 1.0 / value))));
+    }
+
+    // One cut per latency target, the requests that overran it together
+    // report the same overload
+    private void decrease(final long now) {
+      final long last = lastDecreaseNanos;
+
+      if (now - last < latencyTargetNanos) {
+        return;
+      }
+
+      lastDecreaseNanos = now;
+
+      long current;
+
+      do {
+        current = limit.get();
+      } while (!limit.compareAndSet(current, Double.doubleToRawLongBits(
+          Math.max(minLimit, Double.longBitsToDouble(current) * backoffRatio))));
+    }
+
+    @Override
+    public String toString() {
+      return "limit=" + getLimit() + " inFlight=" + getInFlight();
+    }
+  }
+}
@@ -0,0 +1,216 @@
+package org.granite.rest.service;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.granite.rest.ExtendedHeader;
+import org.granite.rest.Response;
+
+/**
+ * Per API key rate limits, checked before a request reaches its handler. Each key's buckets are
+ * a single theoretical arrival time updated by compare-and-set (GCRA), so checking a key never
+ * takes a lock. Buckets live in a size bounded cache and keys idle for longer than idleExpiry are
+ * forgotten, a returning key starts with a full burst. Requests without an API key are not
+ * limited.
+ */
+public class ApiKeyRateLimiter {
+
+  private final RateLimit defaultLimit;
+  private final Map<String, RateLimit> keyLimits = new ConcurrentHashMap<>();
+  private final Cache<String, KeyBuckets> buckets;
+
+  public ApiKeyRateLimiter(final RateLimit defaultLimit) {
+    this(defaultLimit, 100000L, Duration.ofMinutes(10));
+  }
+
+  public ApiKeyRateLimiter(
+      final RateLimit defaultLimit,
+      final long maximumKeys,
+      final Duration idleExpiry) {
+    checkArgument(maximumKeys > 0, "maximumKeys must be a positive number");
+    checkNotNull(idleExpiry, "idleExpiry");
+
+    this.defaultLimit = checkNotNull(defaultLimit, "defaultLimit");
+
+    this.buckets = CacheBuilder
+        .newBuilder()
+        .maximumSize(maximumKeys)
+        .expireAfterAccess(idleExpiry)
+        .build();
+  }
+
+  // Overrides the default limit for one key, null restores the default
+  public ApiKeyRateLimiter withLimit(final String apiKey, final RateLimit rateLimit) {
+    checkNotNull(apiKey, "apiKey");
+
+    if (rateLimit == null) {
+      keyLimits.remove(apiKey);
+    } else {
+      keyLimits.put(apiKey, rateLimit);
+    }
+
+    buckets.invalidate(apiKey);
+    return this;
+  }
+
+  // 0 if the request may go ahead, otherwise the nanoseconds until it would
+  // have been allowed
+  public long tryAcquire(final String apiKey, final long requestBytes) {
+    if (apiKey == null) {
+      return 0L;
+    }
+
+    final KeyBuckets keyBuckets = getBuckets(apiKey);
+    final long now = System.nanoTime();
+
+    long waitNanos = keyBuckets.requests.tryAcquire(now, 1L);
+
+    if (waitNanos == 0L && keyBuckets.bytes != null && requestBytes > 0) {
+      waitNanos = keyBuckets.bytes.tryAcquire(
+          now,
+          Math.min(requestBytes, keyBuckets.rateLimit.getByteBurst()));
+
+      if (waitNanos > 0L) {
+        keyBuckets.requests.refund(1L);
+      }
+    }
+
+    if (waitNanos > 0L) {
+      keyBuckets.throttled.increment();
+    }
+
+    return waitNanos;
+  }
+
+  // Gives back what tryAcquire took for a request that was turned away after
+  // all, e.g. by admission control
+  public void refund(final String apiKey, final long requestBytes) {
+    final KeyBuckets keyBuckets = apiKey == null ? null : buckets.getIfPresent(apiKey);
+
+    if (keyBuckets == null) {
+      return;
+    }
+
+    keyBuckets.requests.refund(1L);
+
+    if (keyBuckets.bytes != null && requestBytes > 0) {
+      keyBuckets.bytes.refund(Math.min(requestBytes, keyBuckets.rateLimit.getByteBurst()));
+    }
+  }
+
+  // A 429 telling the client how long to back off
+  public HttpResponse createRejectedResponse(final String apiKey, final long waitNanos) {
+    final RateLimit rateLimit = getRateLimit(apiKey);
+    final long waitSeconds = Math.max(1L,
+        (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+
+    final HttpResponse response = Response.TOO_MANY_REQUESTS();
+
+    response.headers().set(HttpHeaderNames.RETRY_AFTER, waitSeconds);
+
+    ExtendedHeader.setHeader(response, ExtendedHeader.RateLimitLimit,
+        rateLimit.getRequestBurst());
+    ExtendedHeader.setHeader(response, ExtendedHeader.RateLimitRemaining, 0);
+    ExtendedHeader.setHeader(response, ExtendedHeader.RateLimitReset, waitSeconds);
+
+    return response;
+  }
+
+  public RateLimit getRateLimit(final String apiKey) {
+    final RateLimit rateLimit = apiKey == null ? null : keyLimits.get(apiKey);
+
+    return rateLimit == null ? defaultLimit : rateLimit;
+  }
+
+  // Rejections per key since the key's buckets were created. Not part of the
+  // metrics endpoint, which would publish the keys.
+  public ImmutableMap<String, Long> getThrottledCounts() {
+    final ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+
+    buckets.asMap().forEach((apiKey, keyBuckets) -> {
+      final long throttled = keyBuckets.throttled.sum();
+
+      if (throttled > 0) {
+        builder.put(apiKey, throttled);
+      }
+    });
+
+    return builder.build();
+  }
+
+  public long getTrackedKeys() {
+    return buckets.size();
+  }
+
+  private KeyBuckets getBuckets(final String apiKey) {
+    final KeyBuckets keyBuckets = buckets.getIfPresent(apiKey);
+
+    return keyBuckets != null
+        ? keyBuckets
+        : buckets.asMap().computeIfAbsent(apiKey, key -> new KeyBuckets(getRateLimit(key)));
+  }
+
+  private static class KeyBuckets {
+
+    private final RateLimit rateLimit;
+    private final Bucket requests;
+    private final Bucket bytes;
+    private final LongAdder throttled = new LongAdder();
+
+    private KeyBuckets(final RateLimit rateLimit) {
+      this.rateLimit = rateLimit;
+      this.requests = new Bucket(rateLimit.getRequestsPerSecond(), rateLimit.getRequestBurst());
+      this.bytes = rateLimit.getBytesPerSecond() > 0
+          ? new Bucket(rateLimit.getBytesPerSecond(), rateLimit.getByteBurst())
+          : null;
+    }
+  }
+
+  // Generic cell rate algorithm: each unit pushes the theoretical arrival
+  // time on by one interval, and a request is allowed as long as that time
+  // stays within burst intervals of now
+  private static class Bucket {
+
+    private final double intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+
+    private Bucket(final double unitsPerSecond, final long burst) {
+      this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / unitsPerSecond;
+      this.toleranceNanos = (long) (intervalNanos * burst);
+    }
+
+    private long tryAcquire(final long now, final long units) {
+      final long increment = (long) (intervalNanos * units);
+
+      while (true) {
+        final long arrival = theoreticalArrival.get();
+        final long nextArrival = Math.max(arrival, now) + increment;
+        final long excessNanos = nextArrival - now - toleranceNanos;
+
+        if (excessNanos > 0L) {
+          return excessNanos;
+        }
+
+        if (theoreticalArrival.compareAndSet(arrival, nextArrival)) {
+          return 0L;
+        }
+      }
+    }
+
+    private void refund(final long units) {
+      theoreticalArrival.addAndGet(-(long) (intervalNanos * units));
+    }
+  }
+}
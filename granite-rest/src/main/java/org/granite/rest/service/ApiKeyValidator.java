@@ -0,0 +1,20 @@
+package org.granite.rest.service;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * An api key validation function that can answer asynchronously. Passed to InboundRequestHandler
+ * as its apiKeyValidationFunction, requests wait for validateAsync without blocking the event
+ * loop. apply defaults to blocking on it so the validator works anywhere a plain function is
+ * expected.
+ */
+public interface ApiKeyValidator extends Function<String, Boolean> {
+
+  CompletionStage<Boolean> validateAsync(final String apiKey);
+
+  @Override
+  default Boolean apply(final String apiKey) {
+    return validateAsync(apiKey).toCompletableFuture().join();
+  }
+}
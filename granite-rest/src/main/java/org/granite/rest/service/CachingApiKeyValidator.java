@@ -0,0 +1,244 @@
+package org.granite.rest.service;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.granite.log.LogTools;
+import org.granite.rest.metrics.ServiceMetrics;
+
+/**
+ * Caches the answers of an api key validation function. Valid keys are remembered for the
+ * positive TTL and invalid ones for the, usually shorter, negative TTL. A valid key read after
+ * refreshAhead of its TTL has passed is revalidated in the background while the cached answer is
+ * still served, and a failed revalidation keeps the old answer until it expires. Concurrent misses
+ * on the same key share a single validation, which invalidating the key detaches from the cache.
+ */
+public class CachingApiKeyValidator implements ApiKeyValidator {
+
+  // Cached answers are shared, callers must not complete them
+  private final static CompletableFuture<Boolean> VALID = CompletableFuture.completedFuture(true);
+  private final static CompletableFuture<Boolean> INVALID =
+      CompletableFuture.completedFuture(false);
+
+  private final Function<String, ? extends CompletionStage<Boolean>> validationFunction;
+  private final long positiveTtlNanos;
+  private final long negativeTtlNanos;
+  private final Cache<String, CachedAnswer> cache;
+  private final ConcurrentHashMap<String, CompletableFuture<Boolean>> loading =
+      new ConcurrentHashMap<>();
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder refreshCount = new LongAdder();
+  private final LongAdder failureCount = new LongAdder();
+  private double refreshAhead = 0.8;
+
+  public CachingApiKeyValidator(
+      final Function<String, ? extends CompletionStage<Boolean>> validationFunction,
+      final Duration positiveTtl,
+      final Duration negativeTtl
+  ) {
+    this(validationFunction, positiveTtl, negativeTtl, 100000L);
+  }
+
+  public CachingApiKeyValidator(
+      final Function<String, ? extends CompletionStage<Boolean>> validationFunction,
+      final Duration positiveTtl,
+      final Duration negativeTtl,
+      final long maximumSize
+  ) {
+    checkNotNull(positiveTtl, "positiveTtl");
+    checkNotNull(negativeTtl, "negativeTtl");
+    checkArgument(!positiveTtl.isNegative() && !positiveTtl.isZero(),
+        "positiveTtl must be positive");
+    checkArgument(!negativeTtl.isNegative() && !negativeTtl.isZero(),
+        "negativeTtl must be positive");
+    checkArgument(maximumSize > 0, "maximumSize must be a positive number");
+
+    this.validationFunction = checkNotNull(validationFunction, "validationFunction");
+    this.positiveTtlNanos = positiveTtl.toNanos();
+    this.negativeTtlNanos = negativeTtl.toNanos();
+
+    // answers expire on their own TTL, this only clears out dead entries
+    this.cache = CacheBuilder
+        .newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(positiveTtl.compareTo(negativeTtl) > 0 ? positiveTtl : negativeTtl)
+        .build();
+  }
+
+  // Runs a blocking validation function, e.g. a key store lookup, on the
+  // executor instead of the caller's thread
+  public static CachingApiKeyValidator fromBlocking(
+      final Function<String, Boolean> validationFunction,
+      final Executor executor,
+      final Duration positiveTtl,
+      final Duration negativeTtl) {
+    checkNotNull(validationFunction, "validationFunction");
+    checkNotNull(executor, "executor");
+
+    return new CachingApiKeyValidator(
+        apiKey -> CompletableFuture.supplyAsync(
+            () -> validationFunction.apply(apiKey),
+            executor),
+        positiveTtl,
+        negativeTtl);
+  }
+
+  // Fraction of the positive TTL after which a valid key is revalidated, 1
+  // turns refreshing off
+  public CachingApiKeyValidator withRefreshAhead(final double refreshAhead) {
+    checkArgument(refreshAhead > 0 && refreshAhead <= 1,
+        "refreshAhead must be greater than 0 and at most 1");
+    this.refreshAhead = refreshAhead;
+    return this;
+  }
+
+  public CachingApiKeyValidator withServiceMetrics(final ServiceMetrics serviceMetrics) {
+    checkNotNull(serviceMetrics, "serviceMetrics");
+
+    serviceMetrics
+        .registerCounter("ApiKeyCacheHits", hitCount::sum)
+        .registerCounter("ApiKeyCacheMisses", missCount::sum)
+        .registerCounter("ApiKeyCacheRefreshes", refreshCount::sum)
+        .registerCounter("ApiKeyValidationFailures", failureCount::sum);
+    return this;
+  }
+
+  // Requests without a key are validated every time, they have nothing to
+  // cache under
+  @Override
+  public CompletionStage<Boolean> validateAsync(final String apiKey) {
+    if (apiKey == null) {
+      return validationFunction.apply(null);
+    }
+
+    final CachedAnswer cachedAnswer = cache.getIfPresent(apiKey);
+    final long now = System.nanoTime();
+
+    if (cachedAnswer != null && now - cachedAnswer.expiresNanos < 0) {
+      hitCount.increment();
+
+      if (cachedAnswer.valid && now - cachedAnswer.refreshNanos >= 0) {
+        load(apiKey, cachedAnswer);
+      }
+
+      return cachedAnswer.valid ? VALID : INVALID;
+    }
+
+    missCount.increment();
+
+    return load(apiKey, null);
+  }
+
+  // Validations already running for the key are not cached, a revoked key
+  // stays revoked
+  public void invalidate(final String apiKey) {
+    if (apiKey != null) {
+      loading.remove(apiKey);
+      cache.invalidate(apiKey);
+    }
+  }
+
+  public void invalidateAll() {
+    loading.clear();
+    cache.invalidateAll();
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  // A key has at most one validation running, misses and refreshes that
+  // arrive while it does share its result
+  private CompletableFuture<Boolean> load(final String apiKey, final CachedAnswer refreshing) {
+    final CompletableFuture<Boolean> running = loading.get(apiKey);
+
+    if (running != null) {
+      return running;
+    }
+
+    final CompletableFuture<Boolean> result = new CompletableFuture<>();
+    final CompletableFuture<Boolean> existing = loading.putIfAbsent(apiKey, result);
+
+    if (existing != null) {
+      return existing;
+    }
+
+    CompletionStage<Boolean> validation;
+
+    try {
+      validation = validationFunction.apply(apiKey);
+    } catch (Exception e) {
+      validation = CompletableFuture.failedFuture(e);
+    }
+
+    validation.whenComplete((valid, throwable) -> {
+      if (throwable != null) {
+        failureCount.increment();
+
+        LogTools.warn("Failed to validate api key: {0}", Throwables.getStackTraceAsString(
+            Throwables.getRootCause(throwable)));
+      }
+
+      // The answer is only stored while this validation is still the key's
+      // entry. invalidate removes it under the same lock, so it either comes
+      // first and the answer is dropped, or comes after and clears it.
+      loading.computeIfPresent(apiKey, (key, current) -> {
+        if (current != result) {
+          return current;
+        }
+
+        if (throwable == null) {
+          store(apiKey, Boolean.TRUE.equals(valid));
+
+          if (refreshing != null) {
+            refreshCount.increment();
+          }
+        }
+
+        return null;
+      });
+
+      if (throwable != null) {
+        result.completeExceptionally(throwable);
+      } else {
+        result.complete(Boolean.TRUE.equals(valid));
+      }
+    });
+
+    return result;
+  }
+
+  private void store(final String apiKey, final boolean valid) {
+    final long now = System.nanoTime();
+
+    cache.put(apiKey, valid
+        ? new CachedAnswer(true,
+        now + positiveTtlNanos,
+        now + (long) (positiveTtlNanos * refreshAhead))
+        : new CachedAnswer(false, now + negativeTtlNanos, now + negativeTtlNanos));
+  }
+
+  private static class CachedAnswer {
+
+    private final boolean valid;
+    private final long expiresNanos;
+    private final long refreshNanos;
+
+    private CachedAnswer(final boolean valid, final long expiresNanos, final long refreshNanos) {
+      this.valid = valid;
+      this.expiresNanos = expiresNanos;
+      this.refreshNanos = refreshNanos;
+    }
+  }
+}
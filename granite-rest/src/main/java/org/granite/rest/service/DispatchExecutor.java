@@ -0,0 +1,114 @@
+package org.granite.rest.service;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs request handler work off the netty event loop. The number of pending tasks (waiting +
+ * running) is bounded by maxPending, anything beyond that is rejected so the caller can answer
+ * with a 503 instead of queueing without limit.
+ */
+public class DispatchExecutor implements Executor {
+
+  private final Executor executor;
+  private final int maxPending;
+  private final AtomicInteger queued = new AtomicInteger();
+  private final AtomicInteger pending = new AtomicInteger();
+
+  public DispatchExecutor(
+      final Executor executor,
+      final int maxPending
+  ) {
+    checkArgument(maxPending > 0, "maxPending must be a positive integer");
+    this.executor = checkNotNull(executor, "executor");
+    this.maxPending = maxPending;
+  }
+
+  public static DispatchExecutor fixedPool(final int threads, final int maxPending) {
+    checkArgument(threads > 0, "threads must be a positive integer");
+
+    return new DispatchExecutor(
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("granite-rest-dispatch-%d")
+                .build()),
+        maxPending);
+  }
+
+  // e.g. Thread.ofVirtual().factory() on runtimes that support virtual threads
+  public static DispatchExecutor threadPerTask(
+      final ThreadFactory threadFactory,
+      final int maxPending) {
+    checkNotNull(threadFactory, "threadFactory");
+
+    return new DispatchExecutor(
+        runnable -> threadFactory.newThread(runnable).start(),
+        maxPending);
+  }
+
+  @Override
+  public void execute(final Runnable runnable) {
+    checkNotNull(runnable, "runnable");
+
+    if (pending.incrementAndGet() > maxPending) {
+      pending.decrementAndGet();
+      throw new RejectedExecutionException("Dispatch queue is full");
+    }
+
+    queued.incrementAndGet();
+
+    try {
+      executor.execute(() -> {
+        queued.decrementAndGet();
+
+        try {
+          runnable.run();
+        } finally {
+          pending.decrementAndGet();
+        }
+      });
+    } catch (Throwable e) {
+      // e.g. a thread that could not be started, the task never runs
+      queued.decrementAndGet();
+      pending.decrementAndGet();
+
+      throw e instanceof RejectedExecutionException
+          ? (RejectedExecutionException) e
+          : new RejectedExecutionException("Dispatch failed", e);
+    }
+  }
+
+  public int getQueueDepth() {
+    return queued.get();
+  }
+
+  public int getActiveCount() {
+    return Math.max(0, pending.get() - queued.get());
+  }
+
+  public int getMaxPending() {
+    return maxPending;
+  }
+
+  public void shutdown() {
+    if (executor instanceof ExecutorService) {
+      ((ExecutorService) executor).shutdown();
+    }
+  }
+}
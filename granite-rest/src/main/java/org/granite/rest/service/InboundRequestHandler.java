@@ -5,28 +5,68 @@ import static io.netty.handler.codec.http.HttpHeaderNames.ACCESS_CONTROL_ALLOW_O
 import static io.netty.handler.codec.http.HttpHeaderNames.CONNECTION;
 
 import com.google.common.base.Throwables;
+import io.netty.buffer.ByteBufHolder;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Function;
 import javax.net.ssl.SSLException;
 import org.granite.log.LogTools;
 import org.granite.rest.ExtendedHeader;
 import org.granite.rest.Response;
+import org.granite.rest.StreamingResponse;
+import org.granite.rest.accesslog.AccessLog;
+import org.granite.rest.health.HealthMonitor;
+import org.granite.rest.metrics.MetricsExposition;
+import org.granite.rest.metrics.ServiceMetrics;
+import org.granite.rest.metrics.ServiceMetrics.Counter;
+import org.granite.rest.model.AsyncRequestHandler;
+import org.granite.rest.model.RequestBodySubscriber;
 import org.granite.rest.model.RequestContext;
 import org.granite.rest.model.RequestHandler;
+import org.granite.rest.model.StreamingRequestHandler;
 
-public class InboundRequestHandler extends SimpleChannelInboundHandler<HttpRequest> {
+public class InboundRequestHandler extends SimpleChannelInboundHandler<HttpObject> {
+
+  private final static CompletableFuture<Boolean> VALID = CompletableFuture.completedFuture(true);
+  private final static CompletableFuture<Boolean> INVALID =
+      CompletableFuture.completedFuture(false);
 
   private final Function<RequestContext, RequestHandler> handlerFromContextFunction;
   private boolean muteSSLErrors = false;
   private final Function<String, Boolean> apiKeyValidationFunction;
   private boolean corsEnabled = false;
+  private DispatchExecutor dispatchExecutor = null;
+  private ServiceMetrics serviceMetrics = null;
+  private String metricsPath = "/metrics";
+  private AccessLog accessLog = null;
+  private HealthMonitor healthMonitor = null;
+  private AdmissionController admissionController = null;
+  private ApiKeyRateLimiter rateLimiter = null;
+  private CompletableFuture<Void> pendingWrites = CompletableFuture.completedFuture(null);
+  private InFlightRequest streamingRequest = null;
+  private RequestBodySubscriber bodySubscriber = null;
+  private Throwable bodyFailure = null;
+  private CompletionStage<Void> readPause = null;
+  private ArrayDeque<HttpObject> heldObjects = null;
 
   public InboundRequestHandler(
       final Function<RequestContext, RequestHandler> handlerFromContextFunction
@@ -48,55 +88,541 @@ public class InboundRequestHandler extends SimpleChannelInboundHandler<HttpReque
   }
 
   @Override
-  protected void channelRead0(ChannelHandlerContext ctx,
-      HttpRequest httpRequest) {
+  protected void channelRead0(ChannelHandlerContext ctx, HttpObject httpObject) {
+
+    if (heldObjects != null) {
+      // decoded from data read before reading was turned off
+      heldObjects.add(ReferenceCountUtil.retain(httpObject));
+      return;
+    }
+
+    if (httpObject instanceof FullHttpRequest) {
+      handleRequest(ctx, (HttpRequest) httpObject);
+    } else if (httpObject instanceof HttpRequest) {
+      handleStreamingRequest(ctx, (HttpRequest) httpObject);
+    } else if (httpObject instanceof HttpContent && bodySubscriber != null) {
+      handleStreamingContent(ctx, (HttpContent) httpObject);
+    }
+  }
+
+  private void handleRequest(ChannelHandlerContext ctx, HttpRequest httpRequest) {
+
+    if (RequestBodyAggregator.isRejected(httpRequest)) {
+      // already answered with a 413 by the aggregator
+      return;
+    }
+
+    final InFlightRequest request = new InFlightRequest(
+        httpRequest,
+        httpRequest instanceof FullHttpRequest
+            ? ((FullHttpRequest) httpRequest).content().readableBytes()
+            : 0L);
+
+    incrementCounter(Counter.Requests);
+
+    try {
+
+      // The request is released by SimpleChannelInboundHandler as soon as
+      // channelRead0 returns, so hold a reference until the response is ready
+      ReferenceCountUtil.retain(httpRequest);
+
+      final CompletableFuture<HttpResponse> responseFuture;
+
+      if (dispatchExecutor == null) {
+        responseFuture = processRequest(ctx, request);
+      } else {
+        responseFuture = dispatchToExecutor(ctx, request);
+      }
+
+      respond(ctx, request, responseFuture);
+
+    } catch (Exception e) {
+      LogTools.error(Throwables.getStackTraceAsString(e));
+
+      incrementCounter(Counter.HiddenErrors);
+    }
+
+  }
+
+  // Used by RequestBodyAggregator to decide from the headers alone how a
+  // request body is read
+  public RequestBodyPolicy getRequestBodyPolicy(final HttpRequest httpRequest) {
+    final RequestContext requestContext = new RequestContext(httpRequest);
+
+    final RequestHandler requestHandler = handlerFromContextFunction.apply(requestContext);
+
+    if (requestHandler == null) {
+      return RequestBodyPolicy.DEFAULT;
+    }
+
+    if (isStreamingRequest(httpRequest, requestContext, requestHandler)) {
+      return RequestBodyPolicy.STREAMING;
+    }
+
+    return RequestBodyPolicy.aggregated(requestHandler.getMaxRequestBodySize());
+  }
+
+  // Streamed bodies need a dispatch executor for their blocking work, without
+  // one every body is aggregated
+  private boolean isStreamingRequest(
+      final HttpRequest httpRequest,
+      final RequestContext requestContext,
+      final RequestHandler requestHandler) {
+    return dispatchExecutor != null
+        && requestHandler instanceof StreamingRequestHandler
+        && ((StreamingRequestHandler) requestHandler)
+        .isStreamingRequest(httpRequest.method(), requestContext);
+  }
+
+  private void handleStreamingRequest(ChannelHandlerContext ctx, HttpRequest httpRequest) {
+
+    final RequestContext requestContext = new RequestContext(httpRequest, ctx.alloc());
+
+    final RequestHandler requestHandler = handlerFromContextFunction.apply(requestContext);
+
+    if (!isStreamingRequest(httpRequest, requestContext, requestHandler)) {
+      // not a streamed body after all, the handler gets an empty one
+      handleRequest(ctx, httpRequest);
+      return;
+    }
+
+    final InFlightRequest request = new InFlightRequest(httpRequest, 0L);
+
+    request.route = getRouteName(requestContext, requestHandler);
+
+    incrementCounter(Counter.Requests);
+
+    if (accessLog == null) {
+      logRequest(ctx, httpRequest);
+    }
+
+    final String apiKey = requestContext
+        .getHttpHeaders()
+        .get(ExtendedHeader.ApiKey.getHeaderKey());
+
+    final CompletableFuture<Boolean> validation = validateApiKey(apiKey);
+
+    if (validation.isDone()) {
+      startStreamingRequest(ctx, request, requestContext, requestHandler, apiKey, validation);
+      return;
+    }
+
+    // The body subscriber has to be in place before the first content is
+    // handled, so reading stops and whatever was already read is held back
+    // until the key is answered
+    final ArrayDeque<HttpObject> held = new ArrayDeque<>();
+
+    heldObjects = held;
+
+    ctx.channel().config().setAutoRead(false);
+
+    validation.whenCompleteAsync((valid, throwable) -> {
+      if (heldObjects != held) {
+        // the channel closed in the meantime
+        return;
+      }
+
+      heldObjects = null;
+
+      startStreamingRequest(ctx, request, requestContext, requestHandler, apiKey, validation);
+
+      replayHeldObjects(ctx, held);
+    }, ctx.executor());
+  }
+
+  private void startStreamingRequest(
+      final ChannelHandlerContext ctx,
+      final InFlightRequest request,
+      final RequestContext requestContext,
+      final RequestHandler requestHandler,
+      final String apiKey,
+      final CompletableFuture<Boolean> validation) {
+    final HttpRequest httpRequest = request.httpRequest;
+    final boolean valid;
+
+    try {
+      valid = validation.join();
+    } catch (Exception e) {
+      LogTools.error(Throwables.getStackTraceAsString(e));
+
+      respond(ctx, request, CompletableFuture.completedFuture(Response.INTERNAL_ERROR()));
+      return;
+    }
+
+    if (!valid) {
+      respond(ctx, request, CompletableFuture.completedFuture(Response.FORBIDDEN()));
+      return;
+    }
+
+    final long throttledNanos = throttle(apiKey, request, requestContext, requestHandler);
+
+    if (throttledNanos > 0L) {
+      incrementCounter(Counter.RateLimited);
+
+      respond(ctx, request, CompletableFuture.completedFuture(
+          rateLimiter.createRejectedResponse(apiKey, throttledNanos)));
+      return;
+    }
+
+    if (!admit(request, requestContext, requestHandler)) {
+      incrementCounter(Counter.AdmissionRejected);
+      refundRateLimit(apiKey, request);
+
+      respond(ctx, request, CompletableFuture.completedFuture(
+          admissionController.createRejectedResponse()));
+      return;
+    }
+
+    try {
+
+      bodySubscriber = ((StreamingRequestHandler) requestHandler)
+          .handleStreamingRequest(httpRequest.method(), requestContext, dispatchExecutor);
 
-    RESTService.incrementRequestCount();
+    } catch (Exception e) {
+      LogTools.error(Throwables.getStackTraceAsString(e));
+
+      respond(ctx, request, CompletableFuture.completedFuture(Response.INTERNAL_ERROR()));
+      return;
+    }
+
+    if (bodySubscriber == null) {
+      respond(ctx, request, CompletableFuture.completedFuture(Response.NOT_FOUND()));
+      return;
+    }
+
+    streamingRequest = request;
+    bodyFailure = null;
+
+    markRequestTime();
+  }
+
+  // Stops early if one of the held objects starts another validation, the
+  // rest then wait for that one
+  private void replayHeldObjects(
+      final ChannelHandlerContext ctx,
+      final ArrayDeque<HttpObject> held) {
+
+    while (heldObjects == null && !held.isEmpty()) {
+      final HttpObject httpObject = held.poll();
+
+      try {
+        channelRead0(ctx, httpObject);
+      } finally {
+        ReferenceCountUtil.release(httpObject);
+      }
+    }
+
+    if (heldObjects != null) {
+      heldObjects.addAll(held);
+    } else if (readPause == null) {
+      ctx.channel().config().setAutoRead(true);
+    }
+  }
+
+  private void handleStreamingContent(ChannelHandlerContext ctx, HttpContent httpContent) {
+
+    streamingRequest.requestBytes += httpContent.content().readableBytes();
+
+    if (bodyFailure == null) {
+      try {
+        pauseReading(ctx, bodySubscriber.onContent(httpContent.content()));
+      } catch (Exception e) {
+        bodyFailure = e;
+        bodySubscriber.onError(e);
+      }
+    }
+
+    if (!(httpContent instanceof LastHttpContent)) {
+      return;
+    }
+
+    final InFlightRequest request = streamingRequest;
+    final RequestBodySubscriber subscriber = bodySubscriber;
+
+    streamingRequest = null;
+    bodySubscriber = null;
+
+    if (bodyFailure != null) {
+      LogTools.error("Rejected streamed request body: {0}",
+          Throwables.getStackTraceAsString(bodyFailure));
+
+      respond(ctx, request, CompletableFuture.completedFuture(Response.BAD_REQUEST()));
+      return;
+    }
+
+    CompletableFuture<HttpResponse> responseFuture;
+
+    // the upload was the client's time, a streamed request is timed from the
+    // end of its body
+    request.handlerStartNanos = System.nanoTime();
+
+    try {
+      responseFuture = subscriber.onComplete().toCompletableFuture();
+    } catch (Exception e) {
+      responseFuture = CompletableFuture.failedFuture(e);
+    }
+
+    respond(ctx, request, normalizeResponse(timeHandler(request, responseFuture)));
+  }
+
+  // Stops reading from the connection until the subscriber has caught up
+  // with the body. Only the latest pause turns reading back on.
+  private void pauseReading(
+      final ChannelHandlerContext ctx,
+      final CompletionStage<Void> written) {
+    if (written == null || written.toCompletableFuture().isDone()) {
+      return;
+    }
+
+    readPause = written;
+
+    ctx.channel().config().setAutoRead(false);
 
-    RESTService.incrementCounter(httpRequest.method().name());
+    written.whenComplete((ignored, throwable) -> ctx.executor().execute(() -> {
+      if (readPause == written) {
+        readPause = null;
+
+        if (heldObjects == null) {
+          ctx.channel().config().setAutoRead(true);
+        }
+      }
+    }));
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    if (bodySubscriber != null && bodyFailure == null) {
+      bodySubscriber.onError(new ClosedChannelException());
+    }
+
+    // a body cut off before its end never gets a response to release it
+    if (streamingRequest != null) {
+      releaseRouteLimit(streamingRequest);
+    }
+
+    if (heldObjects != null) {
+      heldObjects.forEach(ReferenceCountUtil::release);
+    }
+
+    bodySubscriber = null;
+    streamingRequest = null;
+    readPause = null;
+    heldObjects = null;
+
+    super.channelInactive(ctx);
+  }
+
+  private CompletableFuture<HttpResponse> dispatchToExecutor(
+      final ChannelHandlerContext ctx,
+      final InFlightRequest request) {
 
     try {
-      HttpResponse httpResponse;
+      return CompletableFuture
+          .supplyAsync(() -> processRequest(ctx, request), dispatchExecutor)
+          .thenCompose(responseFuture -> responseFuture);
+    } catch (RejectedExecutionException e) {
+      incrementCounter(Counter.DispatchRejected);
+
+      return CompletableFuture.completedFuture(Response.SERVICE_UNAVAILABLE());
+    }
+  }
 
+  private void respond(
+      final ChannelHandlerContext ctx,
+      final InFlightRequest request,
+      final CompletableFuture<HttpResponse> responseFuture) {
+
+    if (pendingWrites.isDone() && responseFuture.isDone()) {
+      // Synchronous handlers with nothing queued ahead of them skip the
+      // future chain and write straight from the event loop
       try {
+        writeResponse(ctx, request, responseFuture.join());
+      } finally {
+        ReferenceCountUtil.release(request.httpRequest);
+      }
+      return;
+    }
+
+    // Pipelined requests may complete out of order, but their responses
+    // must still go out in request order on the channel's event loop
+    pendingWrites = pendingWrites
+        .thenCompose(ignored -> responseFuture)
+        .handleAsync(
+            (httpResponse, throwable) -> {
+              try {
+                if (throwable != null) {
+                  LogTools.error(Throwables.getStackTraceAsString(throwable));
+                  writeResponse(ctx, request, Response.INTERNAL_ERROR());
+                } else {
+                  writeResponse(ctx, request, httpResponse);
+                }
+              } finally {
+                ReferenceCountUtil.release(request.httpRequest);
+              }
+              return null;
+            },
+            ctx.executor());
+  }
 
+  private CompletableFuture<HttpResponse> processRequest(
+      final ChannelHandlerContext ctx,
+      final InFlightRequest request) {
+    final HttpRequest httpRequest = request.httpRequest;
+    CompletableFuture<HttpResponse> responseFuture;
+
+    try {
+
+      if (accessLog == null) {
         logRequest(ctx, httpRequest);
+      }
+
+      final RequestContext requestContext = new RequestContext(httpRequest, ctx.alloc());
+
+      final String apiKey = requestContext
+          .getHttpHeaders()
+          .get(ExtendedHeader.ApiKey.getHeaderKey());
+
+      final CompletableFuture<Boolean> validation = validateApiKey(apiKey);
+
+      if (validation.isDone()) {
+        responseFuture = processValidatedRequest(
+            ctx, request, requestContext, apiKey, validation.join());
+      } else {
+        responseFuture = continueAfterValidation(
+            ctx, request, requestContext, apiKey, validation);
+      }
+
+    } catch (Exception e) {
+
+      responseFuture = CompletableFuture.failedFuture(e);
+
+    }
 
-        final RequestContext requestContext = new RequestContext(httpRequest);
+    return normalizeResponse(responseFuture);
+  }
+
+  // A validation that has not completed yet resumes the request on the
+  // thread that would have processed it, the event loop is never blocked
+  private CompletableFuture<HttpResponse> continueAfterValidation(
+      final ChannelHandlerContext ctx,
+      final InFlightRequest request,
+      final RequestContext requestContext,
+      final String apiKey,
+      final CompletableFuture<Boolean> validation) {
+
+    return validation.thenComposeAsync(
+        valid -> processValidatedRequest(ctx, request, requestContext, apiKey, valid),
+        dispatchExecutor == null ? ctx.executor() : dispatchExecutor);
+  }
+
+  private CompletableFuture<Boolean> validateApiKey(final String apiKey) {
+    if (apiKeyValidationFunction instanceof ApiKeyValidator) {
+      return ((ApiKeyValidator) apiKeyValidationFunction)
+          .validateAsync(apiKey)
+          .toCompletableFuture();
+    }
+
+    return Boolean.TRUE.equals(apiKeyValidationFunction.apply(apiKey)) ? VALID : INVALID;
+  }
+
+  private CompletableFuture<HttpResponse> processValidatedRequest(
+      final ChannelHandlerContext ctx,
+      final InFlightRequest request,
+      final RequestContext requestContext,
+      final String apiKey,
+      final boolean valid) {
+    final HttpRequest httpRequest = request.httpRequest;
+    CompletableFuture<HttpResponse> responseFuture;
 
-        if (!apiKeyValidationFunction.apply(
-            requestContext
-                .getHttpHeaders()
-                .get(ExtendedHeader.ApiKey.getHeaderKey())
-        )) {
+    if (!valid) {
 
-          httpResponse = Response.FORBIDDEN();
+      responseFuture = CompletableFuture.completedFuture(Response.FORBIDDEN());
 
-        } else {
+    } else if (isMetricsRequest(httpRequest)) {
 
-          httpResponse = dispatchRequest(
+      request.route = metricsPath;
+
+      responseFuture = CompletableFuture.completedFuture(createMetricsResponse());
+
+    } else {
+
+      final RequestHandler requestHandler = handlerFromContextFunction.apply(requestContext);
+
+      if (requestHandler != null) {
+        request.route = getRouteName(requestContext, requestHandler);
+      }
+
+      final long throttledNanos = throttle(apiKey, request, requestContext, requestHandler);
+
+      if (throttledNanos > 0L) {
+        incrementCounter(Counter.RateLimited);
+
+        responseFuture = CompletableFuture.completedFuture(
+            rateLimiter.createRejectedResponse(apiKey, throttledNanos));
+      } else if (!admit(request, requestContext, requestHandler)) {
+        incrementCounter(Counter.AdmissionRejected);
+        refundRateLimit(apiKey, request);
+
+        responseFuture = CompletableFuture.completedFuture(
+            admissionController.createRejectedResponse());
+      } else {
+        try {
+          responseFuture = dispatchRequest(
               httpRequest.method(),
               requestContext,
-              handlerFromContextFunction.apply(requestContext));
-
-          // If these numbers are being reported, the current
-          // request should not corrupt the response generated
-          // by the handler
-          RESTService.setLastRequestTime();
+              requestHandler)
+              .toCompletableFuture();
+        } catch (Exception e) {
+          responseFuture = CompletableFuture.failedFuture(e);
         }
 
-      } catch (Exception e) {
+        responseFuture = timeHandler(request, responseFuture);
+      }
+
+      // If these numbers are being reported, the current
+      // request should not corrupt the response generated
+      // by the handler
+      markRequestTime();
+    }
 
-        LogTools.error(Throwables.getStackTraceAsString(e));
+    return responseFuture;
+  }
+
+  private CompletableFuture<HttpResponse> normalizeResponse(
+      final CompletableFuture<HttpResponse> responseFuture) {
 
-        httpResponse = Response.INTERNAL_ERROR();
+    if (responseFuture.isDone() && !responseFuture.isCompletedExceptionally()
+        && responseFuture.join() != null) {
+      return responseFuture;
+    }
 
+    return responseFuture.handle((httpResponse, throwable) -> {
+      if (throwable == null) {
+        return httpResponse == null ? Response.NOT_FOUND() : httpResponse;
       }
 
-      if (httpResponse == null) {
-        httpResponse = Response.NOT_FOUND();
+      if (Throwables.getRootCause(throwable) instanceof RejectedExecutionException) {
+        // the dispatch executor, or one a handler handed work to, is full
+        incrementCounter(Counter.DispatchRejected);
+
+        return Response.SERVICE_UNAVAILABLE();
       }
 
+      LogTools.error(Throwables.getStackTraceAsString(throwable));
+
+      return Response.INTERNAL_ERROR();
+    });
+  }
+
+  private void writeResponse(
+      final ChannelHandlerContext ctx,
+      final InFlightRequest request,
+      final HttpResponse httpResponse) {
+
+    final HttpRequest httpRequest = request.httpRequest;
+
+    try {
+
       if (HttpUtil.isKeepAlive(httpRequest)) {
         httpResponse.headers().set(CONNECTION, HttpHeaderValues.KEEP_ALIVE);
       }
@@ -121,19 +647,209 @@ public class InboundRequestHandler extends SimpleChannelInboundHandler<HttpReque
         );
       }
 
-      RESTService.incrementResponseCount();
+      if (httpResponse instanceof StreamingResponse) {
+        final HttpChunkedInput content = ((StreamingResponse) httpResponse).getContent();
+
+        ctx.write(httpResponse);
 
-      RESTService.incrementCounter(String.valueOf(httpResponse.status()));
+        // a streamed response is timed, and holds its admission slot, until
+        // its last chunk is written
+        ctx.writeAndFlush(content).addListener(future -> {
+          releaseRouteLimit(request);
+          recordResponse(ctx, request, httpResponse, content.progress(), requestId);
+        });
+      } else {
+        recordResponse(ctx, request, httpResponse, httpResponse instanceof ByteBufHolder
+            ? ((ByteBufHolder) httpResponse).content().readableBytes()
+            : 0L, requestId);
 
-      ctx.writeAndFlush(httpResponse);
+        ctx.writeAndFlush(httpResponse).addListener(future -> releaseRouteLimit(request));
+      }
     } catch (Exception e) {
       LogTools.error(Throwables.getStackTraceAsString(e));
 
-      RESTService.incrementHiddenErrorCount();
+      releaseRouteLimit(request);
+      incrementCounter(Counter.HiddenErrors);
+    }
+  }
+
+  // Requests matched by a Router are reported under their template, others
+  // under the handler's root path
+  private static String getRouteName(
+      final RequestContext requestContext,
+      final RequestHandler requestHandler) {
+    return requestContext.getPathTemplate() != null
+        ? requestContext.getPathTemplate().getTemplate()
+        : requestHandler.getRootPath();
+  }
+
+  // 0 unless the key is over its rate limit. Like admission control this
+  // skips unmatched requests and health checks. Streamed bodies are charged
+  // by their Content-Length.
+  private long throttle(
+      final String apiKey,
+      final InFlightRequest request,
+      final RequestContext requestContext,
+      final RequestHandler requestHandler) {
+    if (rateLimiter == null
+        || apiKey == null
+        || requestHandler == null
+        || requestHandler.isHealthCheck(requestContext)) {
+      return 0L;
+    }
+
+    return rateLimiter.tryAcquire(apiKey, getChargedBytes(request));
+  }
+
+  // For a request the rate limiter let through but admission control did not
+  private void refundRateLimit(final String apiKey, final InFlightRequest request) {
+    if (rateLimiter != null) {
+      rateLimiter.refund(apiKey, getChargedBytes(request));
+    }
+  }
+
+  private static long getChargedBytes(final InFlightRequest request) {
+    return request.requestBytes > 0
+        ? request.requestBytes
+        : HttpUtil.getContentLength(request.httpRequest, 0L);
+  }
+
+  // Unmatched requests and health checks are always let through, so an
+  // overloaded node can still report itself
+  private boolean admit(
+      final InFlightRequest request,
+      final RequestContext requestContext,
+      final RequestHandler requestHandler) {
+    if (admissionController == null
+        || requestHandler == null
+        || requestHandler.isHealthCheck(requestContext)) {
+      return true;
+    }
+
+    request.routeLimit = admissionController.tryAcquire(
+        request.route,
+        System.nanoTime() - request.startNanos);
+    request.handlerStartNanos = System.nanoTime();
+
+    return request.routeLimit != null;
+  }
+
+  // Called on the event loop once the response is written, or the channel
+  // closed before there was one. Releasing twice is harmless.
+  private static void releaseRouteLimit(final InFlightRequest request) {
+    if (request.routeLimit == null) {
+      return;
+    }
+
+    if (request.handlerNanos >= 0L) {
+      request.routeLimit.release(request.handlerNanos);
+    } else {
+      request.routeLimit.release();
+    }
+
+    request.routeLimit = null;
+  }
+
+  // The admission controller's latency sample, taken when the handler's
+  // response is ready rather than once it has been written. The returned
+  // future completes after the sample is taken.
+  private static CompletableFuture<HttpResponse> timeHandler(
+      final InFlightRequest request,
+      final CompletableFuture<HttpResponse> responseFuture) {
+    if (request.routeLimit == null) {
+      return responseFuture;
+    }
+
+    return responseFuture.whenComplete((httpResponse, throwable) ->
+        request.handlerNanos = System.nanoTime() - request.handlerStartNanos);
+  }
+
+  private boolean isMetricsRequest(final HttpRequest httpRequest) {
+    if (serviceMetrics == null
+        || metricsPath == null
+        || !HttpMethod.GET.equals(httpRequest.method())) {
+      return false;
+    }
+
+    final String uri = httpRequest.uri();
+
+    return uri.startsWith(metricsPath)
+        && (uri.length() == metricsPath.length() || uri.charAt(metricsPath.length()) == '?');
+  }
+
+  private HttpResponse createMetricsResponse() {
+    return Response.createResponse(
+        MetricsExposition
+            .format(serviceMetrics.snapshot())
+            .getBytes(StandardCharsets.UTF_8),
+        HttpResponseStatus.OK,
+        MetricsExposition.CONTENT_TYPE);
+  }
+
+  private void recordResponse(
+      final ChannelHandlerContext ctx,
+      final InFlightRequest request,
+      final HttpResponse httpResponse,
+      final long responseBytes,
+      final Object requestId) {
+    if (serviceMetrics == null && accessLog == null) {
+      return;
     }
 
+    final long durationNanos = System.nanoTime() - request.startNanos;
+
+    if (serviceMetrics != null) {
+      serviceMetrics.recordResponse(
+          request.route,
+          request.httpRequest.method(),
+          httpResponse.status().code(),
+          durationNanos,
+          request.requestBytes,
+          responseBytes);
+    }
+
+    if (accessLog != null) {
+      accessLog.append(
+          ctx.channel().remoteAddress(),
+          request.httpRequest.method(),
+          request.httpRequest.uri(),
+          httpResponse.status().code(),
+          request.requestBytes,
+          responseBytes,
+          durationNanos,
+          requestId);
+    }
   }
 
+  private void incrementCounter(final Counter counter) {
+    if (serviceMetrics != null) {
+      serviceMetrics.increment(counter);
+    }
+  }
+
+  private void markRequestTime() {
+    if (serviceMetrics != null) {
+      serviceMetrics.markRequestTime();
+    }
+  }
+
+  private void registerGauges() {
+    if (serviceMetrics != null && dispatchExecutor != null) {
+      serviceMetrics
+          .registerGauge("DispatchQueueDepth", dispatchExecutor::getQueueDepth)
+          .registerGauge("DispatchActive", dispatchExecutor::getActiveCount);
+    }
+
+    if (serviceMetrics != null && admissionController != null) {
+      serviceMetrics.registerGauge("AdmissionInFlight", admissionController::getInFlight);
+    }
+
+    if (serviceMetrics != null && rateLimiter != null) {
+      serviceMetrics.registerGauge("RateLimiterKeys", rateLimiter::getTrackedKeys);
+    }
+  }
+
+  // Synchronous request logging, only used when no AccessLog is set
   protected void logRequest(
       ChannelHandlerContext channelHandlerContext,
       HttpRequest httpRequest) {
@@ -146,38 +862,80 @@ public class InboundRequestHandler extends SimpleChannelInboundHandler<HttpReque
     );
   }
 
-  private HttpResponse dispatchRequest(
+  private CompletionStage<HttpResponse> dispatchRequest(
       final HttpMethod httpMethod,
       final RequestContext requestContext,
       final RequestHandler requestHandler) {
 
     if (requestContext == null || requestHandler == null) {
-      return null;
+      return CompletableFuture.completedFuture(null);
+    }
+
+    if (requestHandler instanceof AsyncRequestHandler) {
+      return dispatchAsyncRequest(
+          httpMethod,
+          requestContext,
+          (AsyncRequestHandler) requestHandler);
     }
 
     if (httpMethod == HttpMethod.GET) {
 
       if (requestHandler.isHealthCheck(requestContext)) {
-        return requestHandler.isHealthy(requestContext);
+        return CompletableFuture.completedFuture(healthMonitor != null
+            ? healthMonitor.getResponse(requestHandler)
+            : requestHandler.isHealthy(requestContext));
+      } else {
+        return CompletableFuture.completedFuture(requestHandler.handleGet(requestContext));
+      }
+
+    }
+
+    if (httpMethod == HttpMethod.POST) {
+      return CompletableFuture.completedFuture(requestHandler.handlePost(requestContext));
+    }
+
+    if (httpMethod == HttpMethod.PUT) {
+      return CompletableFuture.completedFuture(requestHandler.handlePut(requestContext));
+    }
+
+    if (httpMethod == HttpMethod.DELETE) {
+      return CompletableFuture.completedFuture(requestHandler.handleDelete(requestContext));
+    }
+
+    return CompletableFuture.completedFuture(Response.METHOD_NOT_ALLOWED());
+
+  }
+
+  private CompletionStage<HttpResponse> dispatchAsyncRequest(
+      final HttpMethod httpMethod,
+      final RequestContext requestContext,
+      final AsyncRequestHandler requestHandler) {
+
+    if (httpMethod == HttpMethod.GET) {
+
+      if (requestHandler.isHealthCheck(requestContext)) {
+        return healthMonitor != null
+            ? CompletableFuture.completedFuture(healthMonitor.getResponse(requestHandler))
+            : requestHandler.isHealthyAsync(requestContext);
       } else {
-        return requestHandler.handleGet(requestContext);
+        return requestHandler.handleGetAsync(requestContext);
       }
 
     }
 
     if (httpMethod == HttpMethod.POST) {
-      return requestHandler.handlePost(requestContext);
+      return requestHandler.handlePostAsync(requestContext);
     }
 
     if (httpMethod == HttpMethod.PUT) {
-      return requestHandler.handlePut(requestContext);
+      return requestHandler.handlePutAsync(requestContext);
     }
 
     if (httpMethod == HttpMethod.DELETE) {
-      return requestHandler.handleDelete(requestContext);
+      return requestHandler.handleDeleteAsync(requestContext);
     }
 
-    return Response.METHOD_NOT_ALLOWED();
+    return CompletableFuture.completedFuture(Response.METHOD_NOT_ALLOWED());
 
   }
 
@@ -213,6 +971,81 @@ public class InboundRequestHandler extends SimpleChannelInboundHandler<HttpReque
     return this;
   }
 
+  public InboundRequestHandler withDispatchExecutor(final DispatchExecutor dispatchExecutor) {
+    this.dispatchExecutor = dispatchExecutor;
+    registerGauges();
+    return this;
+  }
+
+  // RESTChannelInitializer passes its service's metrics to every handler it
+  // installs
+  public InboundRequestHandler withServiceMetrics(final ServiceMetrics serviceMetrics) {
+    this.serviceMetrics = serviceMetrics;
+    registerGauges();
+    return this;
+  }
+
+  // Path of the built-in metrics endpoint, null turns it off
+  public InboundRequestHandler withMetricsPath(final String metricsPath) {
+    this.metricsPath = metricsPath;
+    return this;
+  }
+
+  // Requests are logged when their response is written, null falls back to
+  // logRequest
+  public InboundRequestHandler withAccessLog(final AccessLog accessLog) {
+    this.accessLog = accessLog;
+    return this;
+  }
+
+  // Health checks are answered from the monitor's last result instead of
+  // running the handler's check for every probe
+  public InboundRequestHandler withHealthMonitor(final HealthMonitor healthMonitor) {
+    this.healthMonitor = healthMonitor;
+    return this;
+  }
+
+  public InboundRequestHandler withAdmissionController(
+      final AdmissionController admissionController) {
+    this.admissionController = admissionController;
+    registerGauges();
+    return this;
+  }
+
+  public InboundRequestHandler withRateLimiter(final ApiKeyRateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+    registerGauges();
+    return this;
+  }
+
+  public DispatchExecutor getDispatchExecutor() {
+    return dispatchExecutor;
+  }
+
+  public ServiceMetrics getServiceMetrics() {
+    return serviceMetrics;
+  }
+
+  public String getMetricsPath() {
+    return metricsPath;
+  }
+
+  public AccessLog getAccessLog() {
+    return accessLog;
+  }
+
+  public HealthMonitor getHealthMonitor() {
+    return healthMonitor;
+  }
+
+  public AdmissionController getAdmissionController() {
+    return admissionController;
+  }
+
+  public ApiKeyRateLimiter getRateLimiter() {
+    return rateLimiter;
+  }
+
   public boolean isCorsEnabled() {
     return corsEnabled;
   }
@@ -224,4 +1057,23 @@ public class InboundRequestHandler extends SimpleChannelInboundHandler<HttpReque
   private boolean isInvalidSSLException(final Throwable cause) {
     return cause instanceof DecoderException && cause.getCause() instanceof SSLException;
   }
+
+  // What the metrics need to carry from a request to its response. The route
+  // may be set on a dispatch thread, the response future orders it before
+  // the write.
+  private static class InFlightRequest {
+
+    private final HttpRequest httpRequest;
+    private final long startNanos = System.nanoTime();
+    private long requestBytes;
+    private String route = null;
+    private AdmissionController.RouteLimit routeLimit = null;
+    private long handlerStartNanos = 0L;
+    private long handlerNanos = -1L;
+
+    private InFlightRequest(final HttpRequest httpRequest, final long requestBytes) {
+      this.httpRequest = httpRequest;
+      this.requestBytes = requestBytes;
+    }
+  }
 }
@@ -1,22 +1,366 @@
 package org.granite.rest.service;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpMessage;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.AsciiString;
+import io.netty.util.ReferenceCountUtil;
+import org.granite.rest.accesslog.AccessLog;
+import org.granite.rest.handler.ContentType;
+import org.granite.rest.health.HealthMonitor;
+import org.granite.rest.metrics.ServiceMetrics;
 
+/**
+ * Speaks HTTP/1.1 by default. With HTTP/2 enabled, cleartext connections accept both the h2c
+ * upgrade and prior knowledge, TLS connections negotiate h2 through ALPN (the SslContext must be
+ * built with an ApplicationProtocolConfig advertising h2). Every HTTP/2 stream is converted back to
+ * HttpRequest / HttpResponse objects and gets its own InboundRequestHandler, so RequestHandlers see
+ * the same messages whichever protocol is spoken.
+ */
 public abstract class RESTChannelInitializer extends ChannelInitializer<SocketChannel> {
 
+  private int maxRequestBodySize = 1048576;
+  private boolean http2Enabled = false;
+  private long maxConcurrentStreams = 100;
+  private SslContext sslContext = null;
+  private boolean compressionEnabled = false;
+  private int compressionLevel = 6;
+  private int compressionThreshold = 1024;
+  private ImmutableSet<ContentType> uncompressedContentTypes = ImmutableSet.of();
+  private ServiceMetrics serviceMetrics = new ServiceMetrics();
+  private AccessLog accessLog = null;
+  private HealthMonitor healthMonitor = null;
+  private AdmissionController admissionController = null;
+  private ApiKeyRateLimiter rateLimiter = null;
+
   @Override
   protected void initChannel(final SocketChannel ch) throws Exception {
     ch.config().setKeepAlive(true);
 
-    ch
-        .pipeline()
-        .addLast(new HttpServerCodec())
-        .addLast(new HttpObjectAggregator(1048576))
-        .addLast(getInboundRequestHandlerInstance());
+    final ChannelPipeline pipeline = ch.pipeline();
+
+    if (sslContext != null) {
+      pipeline.addLast(sslContext.newHandler(ch.alloc()));
+
+      if (http2Enabled) {
+        pipeline.addLast(new ProtocolNegotiationHandler());
+      } else {
+        configureHttp1(pipeline);
+      }
+    } else if (http2Enabled) {
+      configureCleartextHttp2(pipeline);
+    } else {
+      configureHttp1(pipeline);
+    }
   }
 
   protected abstract InboundRequestHandler getInboundRequestHandlerInstance();
+
+  private void configureHttp1(final ChannelPipeline pipeline) {
+    pipeline.addLast(new HttpServerCodec());
+
+    configureRequestHandlers(pipeline);
+  }
+
+  private void configureRequestHandlers(final ChannelPipeline pipeline) {
+    for (ChannelHandler handler : createRequestHandlers()) {
+      pipeline.addLast(handler);
+    }
+  }
+
+  // Shared by HTTP/1.1 connections and HTTP/2 stream channels, in pipeline
+  // order. The compressor must see the HttpRequest for its Accept-Encoding.
+  private ImmutableList<ChannelHandler> createRequestHandlers() {
+    final ImmutableList.Builder<ChannelHandler> handlers = ImmutableList.builder();
+
+    if (compressionEnabled) {
+      handlers.add(new ResponseCompressor(
+          compressionLevel,
+          compressionThreshold,
+          uncompressedContentTypes,
+          serviceMetrics));
+    }
+
+    final InboundRequestHandler inboundRequestHandler = getInboundRequestHandlerInstance()
+        .withServiceMetrics(serviceMetrics)
+        .withAccessLog(accessLog)
+        .withHealthMonitor(healthMonitor)
+        .withAdmissionController(admissionController)
+        .withRateLimiter(rateLimiter);
+
+    return handlers
+        .add(new RequestBodyAggregator(
+            maxRequestBodySize,
+            inboundRequestHandler::getRequestBodyPolicy))
+        .add(new ChunkedWriteHandler())
+        .add(inboundRequestHandler)
+        .build();
+  }
+
+  private void configureHttp2(final ChannelPipeline pipeline) {
+    pipeline
+        .addLast(createHttp2FrameCodec())
+        .addLast(createHttp2MultiplexHandler());
+  }
+
+  private void configureCleartextHttp2(final ChannelPipeline pipeline) {
+    final HttpServerCodec sourceCodec = new HttpServerCodec();
+
+    final HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(
+        sourceCodec,
+        protocol -> AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)
+            ? new Http2ServerUpgradeCodec(createHttp2FrameCodec(), createHttp2MultiplexHandler())
+            : null,
+        maxRequestBodySize);
+
+    // added in place of the upgrade handlers, so the HTTP/2 handlers must go
+    // where it sits rather than at the end of the pipeline
+    final ChannelHandler priorKnowledgeHandler = new ChannelInitializer<Channel>() {
+      @Override
+      protected void initChannel(final Channel ch) {
+        final ChannelPipeline pipeline = ch.pipeline();
+        final Http2FrameCodec frameCodec = createHttp2FrameCodec();
+
+        pipeline.addAfter(pipeline.context(this).name(), null, frameCodec);
+        pipeline.addAfter(pipeline.context(frameCodec).name(), null,
+            createHttp2MultiplexHandler());
+      }
+    };
+
+    pipeline
+        .addLast(new CleartextHttp2ServerUpgradeHandler(
+            sourceCodec,
+            upgradeHandler,
+            priorKnowledgeHandler))
+        .addLast(new Http1FallbackHandler());
+  }
+
+  private Http2FrameCodec createHttp2FrameCodec() {
+    return Http2FrameCodecBuilder
+        .forServer()
+        .initialSettings(Http2Settings
+            .defaultSettings()
+            .maxConcurrentStreams(maxConcurrentStreams))
+        .build();
+  }
+
+  private Http2MultiplexHandler createHttp2MultiplexHandler() {
+    return new Http2MultiplexHandler(new ChannelInitializer<Channel>() {
+      @Override
+      protected void initChannel(final Channel ch) {
+        ch.pipeline().addLast(new Http2StreamFrameToHttpObjectCodec(true));
+
+        configureRequestHandlers(ch.pipeline());
+      }
+    });
+  }
+
+  // Default limit for aggregated request bodies, handlers can override it
+  // for their own routes
+  public RESTChannelInitializer withMaxRequestBodySize(final int maxRequestBodySize) {
+    checkArgument(maxRequestBodySize >= 0, "maxRequestBodySize must not be negative");
+    this.maxRequestBodySize = maxRequestBodySize;
+    return this;
+  }
+
+  public RESTChannelInitializer withHttp2Enabled(final boolean http2Enabled) {
+    this.http2Enabled = http2Enabled;
+    return this;
+  }
+
+  public RESTChannelInitializer withMaxConcurrentStreams(final long maxConcurrentStreams) {
+    checkArgument(maxConcurrentStreams > 0, "maxConcurrentStreams must be a positive number");
+    this.maxConcurrentStreams = maxConcurrentStreams;
+    return this;
+  }
+
+  public RESTChannelInitializer withSslContext(final SslContext sslContext) {
+    this.sslContext = sslContext;
+    return this;
+  }
+
+  public RESTChannelInitializer withCompressionEnabled(final boolean compressionEnabled) {
+    this.compressionEnabled = compressionEnabled;
+    return this;
+  }
+
+  public RESTChannelInitializer withCompressionLevel(final int compressionLevel) {
+    checkArgument(compressionLevel >= 0 && compressionLevel <= 9,
+        "compressionLevel must be between 0 and 9");
+    this.compressionLevel = compressionLevel;
+    return this;
+  }
+
+  // Full responses with fewer body bytes than this are sent uncompressed
+  public RESTChannelInitializer withCompressionThreshold(final int compressionThreshold) {
+    checkArgument(compressionThreshold >= 0, "compressionThreshold must not be negative");
+    this.compressionThreshold = compressionThreshold;
+    return this;
+  }
+
+  public RESTChannelInitializer withUncompressedContentTypes(
+      final ContentType... uncompressedContentTypes) {
+    this.uncompressedContentTypes = ImmutableSet.copyOf(
+        checkNotNull(uncompressedContentTypes, "uncompressedContentTypes"));
+    return this;
+  }
+
+  // Set by RESTService, so every channel of a service records into its own
+  // instance
+  public RESTChannelInitializer withServiceMetrics(final ServiceMetrics serviceMetrics) {
+    this.serviceMetrics = checkNotNull(serviceMetrics, "serviceMetrics");
+    return this;
+  }
+
+  // Set by RESTService, null leaves request logging to the handlers
+  public RESTChannelInitializer withAccessLog(final AccessLog accessLog) {
+    this.accessLog = accessLog;
+    return this;
+  }
+
+  // Set by RESTService
+  public RESTChannelInitializer withHealthMonitor(final HealthMonitor healthMonitor) {
+    this.healthMonitor = healthMonitor;
+    return this;
+  }
+
+  // Shared by every channel, so limits apply to the whole service
+  public RESTChannelInitializer withAdmissionController(
+      final AdmissionController admissionController) {
+    this.admissionController = admissionController;
+    return this;
+  }
+
+  public RESTChannelInitializer withRateLimiter(final ApiKeyRateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+    return this;
+  }
+
+  public int getMaxRequestBodySize() {
+    return maxRequestBodySize;
+  }
+
+  public boolean isHttp2Enabled() {
+    return http2Enabled;
+  }
+
+  public long getMaxConcurrentStreams() {
+    return maxConcurrentStreams;
+  }
+
+  public SslContext getSslContext() {
+    return sslContext;
+  }
+
+  public boolean isCompressionEnabled() {
+    return compressionEnabled;
+  }
+
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  public int getCompressionThreshold() {
+    return compressionThreshold;
+  }
+
+  public ImmutableSet<ContentType> getUncompressedContentTypes() {
+    return uncompressedContentTypes;
+  }
+
+  public ServiceMetrics getServiceMetrics() {
+    return serviceMetrics;
+  }
+
+  public AccessLog getAccessLog() {
+    return accessLog;
+  }
+
+  public HealthMonitor getHealthMonitor() {
+    return healthMonitor;
+  }
+
+  public AdmissionController getAdmissionController() {
+    return admissionController;
+  }
+
+  public ApiKeyRateLimiter getRateLimiter() {
+    return rateLimiter;
+  }
+
+  private class ProtocolNegotiationHandler extends ApplicationProtocolNegotiationHandler {
+
+    private ProtocolNegotiationHandler() {
+      super(ApplicationProtocolNames.HTTP_1_1);
+    }
+
+    @Override
+    protected void configurePipeline(final ChannelHandlerContext ctx, final String protocol) {
+      if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+        configureHttp2(ctx.pipeline());
+        return;
+      }
+
+      if (ApplicationProtocolNames.HTTP_1_1.equals(protocol)) {
+        configureHttp1(ctx.pipeline());
+        return;
+      }
+
+      throw new IllegalStateException("Unsupported application protocol: " + protocol);
+    }
+  }
+
+  // Sits behind the cleartext upgrade handler and only sees requests that did
+  // not switch to HTTP/2, it swaps itself for the HTTP/1.1 handlers
+  private class Http1FallbackHandler extends SimpleChannelInboundHandler<HttpMessage> {
+
+    @Override
+    protected void channelRead0(final ChannelHandlerContext ctx, final HttpMessage msg) {
+      final ChannelPipeline pipeline = ctx.pipeline();
+
+      for (ChannelHandler handler : createRequestHandlers().reverse()) {
+        pipeline.addAfter(ctx.name(), null, handler);
+      }
+
+      pipeline.remove(this);
+
+      ctx.fireChannelRead(ReferenceCountUtil.retain(msg));
+    }
+
+    @Override
+    public void userEventTriggered(final ChannelHandlerContext ctx, final Object evt)
+        throws Exception {
+      if (evt instanceof HttpServerUpgradeHandler.UpgradeEvent
+          || evt instanceof CleartextHttp2ServerUpgradeHandler.PriorKnowledgeUpgradeEvent) {
+        ctx.pipeline().remove(this);
+      }
+
+      super.userEventTriggered(ctx, evt);
+    }
+  }
 }
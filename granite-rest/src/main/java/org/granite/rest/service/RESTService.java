@@ -9,32 +9,50 @@ import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
-import java.time.Clock;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
 import org.granite.base.ExceptionTools;
 import org.granite.log.LogTools;
+import org.granite.rest.accesslog.AccessLog;
+import org.granite.rest.accesslog.LoggerAccessLogSink;
+import org.granite.rest.health.HealthMonitor;
+import org.granite.rest.metrics.ServiceMetrics;
 
 public class RESTService {
 
   private Channel channel;
   private final RESTChannelInitializer restChannelInitializer;
+  private final ServiceMetrics serviceMetrics;
   private final int port;
-  public static final ConcurrentHashMap<String, AtomicLong> COUNTER_MAP = new ConcurrentHashMap<>();
+  private volatile AccessLog accessLog;
+  private HealthMonitor healthMonitor = null;
 
   public RESTService(
       final int port,
       final RESTChannelInitializer restChannelInitializer
+  ) {
+    this(port, restChannelInitializer, new ServiceMetrics());
+  }
+
+  public RESTService(
+      final int port,
+      final RESTChannelInitializer restChannelInitializer,
+      final ServiceMetrics serviceMetrics
   ) {
     checkArgument(port > 0, "port must be a positive integer");
     this.port = port;
     this.restChannelInitializer = checkNotNull(restChannelInitializer,
         "restChannelInitializer");
+    this.serviceMetrics = checkNotNull(serviceMetrics, "serviceMetrics");
 
-    for (ServiceCounters serviceCounter : ServiceCounters.values()) {
-      COUNTER_MAP.computeIfAbsent(serviceCounter.name(), key -> new AtomicLong());
-    }
+    restChannelInitializer.withServiceMetrics(serviceMetrics);
+
+    // registered once, a later withAccessLog could not replace them
+    serviceMetrics
+        .registerCounter("AccessLogWritten", () -> accessLogCount(AccessLog::getWritten))
+        .registerCounter("AccessLogDropped", () -> accessLogCount(AccessLog::getDropped))
+        .registerCounter("AccessLogSampledOut", () -> accessLogCount(AccessLog::getSampledOut));
 
+    withAccessLog(new AccessLog(new LoggerAccessLogSink()));
   }
 
   public void start() {
@@ -44,9 +62,15 @@ public class RESTService {
 
     try {
 
-      setCounter(
-          ServiceCounters.StartTimestamp,
-          Clock.systemUTC().millis());
+      serviceMetrics.markStarted();
+
+      if (accessLog != null) {
+        accessLog.start();
+      }
+
+      if (healthMonitor != null) {
+        healthMonitor.start();
+      }
 
       ServerBootstrap serverBootstrap = new ServerBootstrap();
 
@@ -69,52 +93,52 @@ public class RESTService {
     } finally {
       parentGroup.shutdownGracefully();
       childGroup.shutdownGracefully();
-    }
-  }
 
-  public static void incrementHiddenErrorCount() {
-    incrementCounter(ServiceCounters.HiddenErrors);
-  }
+      if (accessLog != null) {
+        accessLog.close();
+      }
 
-  public static void incrementRequestCount() {
-    incrementCounter(ServiceCounters.Requests);
+      if (healthMonitor != null) {
+        healthMonitor.close();
+      }
+    }
   }
 
-  public static void incrementResponseCount() {
-    incrementCounter(ServiceCounters.Responses);
+  // Started and closed with the service. Null turns the access log off and
+  // leaves request logging to InboundRequestHandler.logRequest.
+  public RESTService withAccessLog(final AccessLog accessLog) {
+    this.accessLog = accessLog;
+
+    restChannelInitializer.withAccessLog(accessLog);
+    return this;
   }
 
-  public static void setLastRequestTime() {
-    setCounter(
-        ServiceCounters.LastRequestTimestamp,
-        Clock.systemUTC().millis());
+  // The counts of the access log currently in use, 0 without one
+  private long accessLogCount(final ToLongFunction<AccessLog> count) {
+    final AccessLog currentLog = accessLog;
 
+    return currentLog == null ? 0L : count.applyAsLong(currentLog);
   }
 
-  public static void incrementCounter(ServiceCounters serviceCounter) {
-    incrementCounter(serviceCounter.name());
+  // Started and closed with the service, probes are then answered from its
+  // cached results
+  public RESTService withHealthMonitor(final HealthMonitor healthMonitor) {
+    this.healthMonitor = healthMonitor;
+
+    restChannelInitializer.withHealthMonitor(healthMonitor);
+    return this;
   }
 
-  public static void incrementCounter(String counter) {
-    COUNTER_MAP
-        .computeIfAbsent(
-            counter,
-            key -> new AtomicLong(0)
-        )
-        .getAndIncrement();
+  public ServiceMetrics getServiceMetrics() {
+    return serviceMetrics;
   }
 
-  public static void setCounter(ServiceCounters serviceCounter, long value) {
-    setCounter(serviceCounter.name(), value);
+  public AccessLog getAccessLog() {
+    return accessLog;
   }
 
-  public static void setCounter(String counter, long value) {
-    COUNTER_MAP
-        .computeIfAbsent(
-            counter,
-            key -> new AtomicLong(0)
-        )
-        .set(value);
+  public HealthMonitor getHealthMonitor() {
+    return healthMonitor;
   }
 
   public void shutdown() {
@@ -123,12 +147,4 @@ public class RESTService {
     channel.close();
   }
 
-  public enum ServiceCounters {
-    StartTimestamp,
-    Requests,
-    Responses,
-    HiddenErrors,
-    LastRequestTimestamp
-  }
-
 }
@@ -0,0 +1,65 @@
+package org.granite.rest.service;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A sustained rate with the burst allowed on top of it, for requests and optionally for request
+ * body bytes.
+ */
+public class RateLimit {
+
+  private final double requestsPerSecond;
+  private final int requestBurst;
+  private final double bytesPerSecond;
+  private final long byteBurst;
+
+  private RateLimit(
+      final double requestsPerSecond,
+      final int requestBurst,
+      final double bytesPerSecond,
+      final long byteBurst) {
+    this.requestsPerSecond = requestsPerSecond;
+    this.requestBurst = requestBurst;
+    this.bytesPerSecond = bytesPerSecond;
+    this.byteBurst = byteBurst;
+  }
+
+  public static RateLimit of(final double requestsPerSecond, final int requestBurst) {
+    checkArgument(requestsPerSecond > 0, "requestsPerSecond must be positive");
+    checkArgument(requestBurst > 0, "requestBurst must be a positive number");
+
+    return new RateLimit(requestsPerSecond, requestBurst, 0, 0L);
+  }
+
+  // Request bodies count against this as well, larger than byteBurst they
+  // are charged as byteBurst
+  public RateLimit withBytes(final double bytesPerSecond, final long byteBurst) {
+    checkArgument(bytesPerSecond > 0, "bytesPerSecond must be positive");
+    checkArgument(byteBurst > 0, "byteBurst must be a positive number");
+
+    return new RateLimit(requestsPerSecond, requestBurst, bytesPerSecond, byteBurst);
+  }
+
+  public double getRequestsPerSecond() {
+    return requestsPerSecond;
+  }
+
+  public int getRequestBurst() {
+    return requestBurst;
+  }
+
+  // 0 when bytes are not limited
+  public double getBytesPerSecond() {
+    return bytesPerSecond;
+  }
+
+  public long getByteBurst() {
+    return byteBurst;
+  }
+
+  @Override
+  public String toString() {
+    return requestsPerSecond + " req/s, burst " + requestBurst
+        + (bytesPerSecond > 0 ? ", " + bytesPerSecond + " B/s, burst " + byteBurst : "");
+  }
+}
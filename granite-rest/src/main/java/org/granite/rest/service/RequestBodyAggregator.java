@@ -0,0 +1,146 @@
+package org.granite.rest.service;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Throwables;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.DecoderResult;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpMessage;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMessage;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import java.util.function.Function;
+import org.granite.log.LogTools;
+
+/**
+ * An HttpObjectAggregator whose size limit is chosen per request from its RequestBodyPolicy.
+ * Requests the policy marks as streaming are passed through chunk by chunk without being
+ * aggregated. The policy is only looked up for requests that declare a body.
+ */
+public class RequestBodyAggregator extends HttpObjectAggregator {
+
+  // Marks a message that was already answered with a 413
+  private final static TooLongFrameException REJECTED =
+      new TooLongFrameException("Request body exceeds the route's limit");
+
+  private final int defaultMaxBodySize;
+  private final Function<HttpRequest, RequestBodyPolicy> policyFunction;
+
+  private int maxBodySize;
+  private boolean passThrough = false;
+  private boolean discarding = false;
+
+  public RequestBodyAggregator(
+      final int defaultMaxBodySize,
+      final Function<HttpRequest, RequestBodyPolicy> policyFunction) {
+    // the per request limit is enforced here, the parent only sees a ceiling
+    super(Integer.MAX_VALUE);
+
+    checkArgument(defaultMaxBodySize >= 0, "defaultMaxBodySize must not be negative");
+
+    this.defaultMaxBodySize = defaultMaxBodySize;
+    this.maxBodySize = defaultMaxBodySize;
+    this.policyFunction = checkNotNull(policyFunction, "policyFunction");
+  }
+
+  @Override
+  public boolean acceptInboundMessage(final Object msg) throws Exception {
+    if (msg instanceof HttpRequest && !(msg instanceof FullHttpRequest)) {
+      final RequestBodyPolicy policy = findPolicy((HttpRequest) msg);
+
+      passThrough = policy.isStreaming();
+      discarding = false;
+      maxBodySize = policy.getMaxBodySize() < 0 ? defaultMaxBodySize : policy.getMaxBodySize();
+
+      if (passThrough) {
+        sendContinue((HttpRequest) msg);
+        return false;
+      }
+    } else if ((passThrough || discarding) && msg instanceof HttpContent) {
+      if (msg instanceof LastHttpContent) {
+        passThrough = false;
+      }
+
+      return false;
+    }
+
+    return super.acceptInboundMessage(msg);
+  }
+
+  @Override
+  protected boolean isContentLengthInvalid(final HttpMessage start, final int maxContentLength) {
+    return super.isContentLengthInvalid(start, Math.min(maxContentLength, maxBodySize));
+  }
+
+  @Override
+  protected Object newContinueResponse(
+      final HttpMessage start,
+      final int maxContentLength,
+      final ChannelPipeline pipeline) {
+    return super.newContinueResponse(start, Math.min(maxContentLength, maxBodySize), pipeline);
+  }
+
+  // Bodies without a Content-Length can only be checked as they grow. The
+  // rest of the message is handed on unaggregated, and ignored, until the
+  // connection is closed after the 413.
+  @Override
+  protected void aggregate(final FullHttpMessage aggregated, final HttpContent content)
+      throws Exception {
+    if (aggregated.content().readableBytes() > maxBodySize) {
+      discarding = true;
+
+      aggregated.setDecoderResult(DecoderResult.failure(REJECTED));
+
+      ctx().channel().config().setAutoRead(false);
+
+      handleOversizedMessage(ctx(), aggregated);
+      return;
+    }
+
+    super.aggregate(aggregated, content);
+  }
+
+  public static boolean isRejected(final HttpRequest httpRequest) {
+    return httpRequest.decoderResult().cause() == REJECTED;
+  }
+
+  private RequestBodyPolicy findPolicy(final HttpRequest httpRequest) {
+    if (!HttpUtil.isContentLengthSet(httpRequest)
+        && !HttpUtil.isTransferEncodingChunked(httpRequest)) {
+      return RequestBodyPolicy.DEFAULT;
+    }
+
+    try {
+      final RequestBodyPolicy policy = policyFunction.apply(httpRequest);
+      return policy == null ? RequestBodyPolicy.DEFAULT : policy;
+    } catch (Exception e) {
+      LogTools.error(Throwables.getStackTraceAsString(e));
+      return RequestBodyPolicy.DEFAULT;
+    }
+  }
+
+  // Streamed bodies bypass the parent, which would otherwise answer the
+  // expectation
+  private void sendContinue(final HttpRequest httpRequest) {
+    if (!HttpUtil.is100ContinueExpected(httpRequest)) {
+      return;
+    }
+
+    httpRequest.headers().remove(HttpHeaderNames.EXPECT);
+
+    ctx().writeAndFlush(new DefaultFullHttpResponse(
+        httpRequest.protocolVersion(),
+        HttpResponseStatus.CONTINUE,
+        Unpooled.EMPTY_BUFFER));
+  }
+}
@@ -0,0 +1,32 @@
+package org.granite.rest.service;
+
+/**
+ * How the body of a request is read: aggregated up to a maximum size, or handed to a streaming
+ * handler chunk by chunk.
+ */
+public class RequestBodyPolicy {
+
+  public final static RequestBodyPolicy DEFAULT = new RequestBodyPolicy(-1, false);
+  public final static RequestBodyPolicy STREAMING = new RequestBodyPolicy(-1, true);
+
+  private final int maxBodySize;
+  private final boolean streaming;
+
+  private RequestBodyPolicy(final int maxBodySize, final boolean streaming) {
+    this.maxBodySize = maxBodySize;
+    this.streaming = streaming;
+  }
+
+  public static RequestBodyPolicy aggregated(final int maxBodySize) {
+    return maxBodySize < 0 ? DEFAULT : new RequestBodyPolicy(maxBodySize, false);
+  }
+
+  // Negative when the server wide limit applies
+  public int getMaxBodySize() {
+    return maxBodySize;
+  }
+
+  public boolean isStreaming() {
+    return streaming;
+  }
+}
@@ -0,0 +1,128 @@
+package org.granite.rest.service;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableSet;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.LastHttpContent;
+import java.util.List;
+import org.granite.rest.handler.ContentType;
+import org.granite.rest.metrics.ServiceMetrics;
+import org.granite.rest.metrics.ServiceMetrics.Counter;
+
+/**
+ * gzip / deflate response compression negotiated through Accept-Encoding. Bodies smaller than the
+ * threshold and the excluded content types are sent as-is. Streamed responses have no known length
+ * and are always compressed unless their content type is excluded.
+ *
+ * <p>Every response that could have been compressed carries Vary: Accept-Encoding, and a compressed
+ * response's ETag is weakened, so caches keep the encodings apart while If-None-Match, which
+ * compares weakly, still matches either.
+ */
+public class ResponseCompressor extends HttpContentCompressor {
+
+  private final static int WINDOW_BITS = 15;
+  private final static int MEM_LEVEL = 8;
+
+  private final ImmutableSet<ContentType> excludedContentTypes;
+  private final ServiceMetrics serviceMetrics;
+
+  private boolean compressing = false;
+  private long bytesIn = 0L;
+  private long bytesOut = 0L;
+  private long compressionNanos = 0L;
+
+  public ResponseCompressor(
+      final int compressionLevel,
+      final int contentSizeThreshold,
+      final ImmutableSet<ContentType> excludedContentTypes,
+      final ServiceMetrics serviceMetrics) {
+    super(compressionLevel, WINDOW_BITS, MEM_LEVEL, contentSizeThreshold);
+
+    this.excludedContentTypes = checkNotNull(excludedContentTypes, "excludedContentTypes");
+    this.serviceMetrics = checkNotNull(serviceMetrics, "serviceMetrics");
+  }
+
+  @Override
+  protected Result beginEncode(final HttpResponse headers, final String acceptEncoding)
+      throws Exception {
+
+    if (isExcluded(headers.headers().get(HttpHeaderNames.CONTENT_TYPE))) {
+      return null;
+    }
+
+    if (!headers.headers().containsValue(
+        HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING, true)) {
+      headers.headers().add(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING);
+    }
+
+    final Result result = super.beginEncode(headers, acceptEncoding);
+
+    compressing = result != null;
+
+    if (compressing) {
+      final String etag = headers.headers().get(HttpHeaderNames.ETAG);
+
+      if (etag != null && !etag.startsWith("W/")) {
+        headers.headers().set(HttpHeaderNames.ETAG, "W/" + etag);
+      }
+    }
+
+    return result;
+  }
+
+  @Override
+  protected void encode(
+      final ChannelHandlerContext ctx,
+      final HttpObject msg,
+      final List<Object> out) throws Exception {
+
+    final int readableBytes = msg instanceof HttpContent
+        ? ((HttpContent) msg).content().readableBytes()
+        : 0;
+    final int existingMessages = out.size();
+    final long startNanos = System.nanoTime();
+
+    super.encode(ctx, msg, out);
+
+    if (!compressing) {
+      return;
+    }
+
+    compressionNanos += System.nanoTime() - startNanos;
+    bytesIn += readableBytes;
+
+    for (int i = existingMessages; i < out.size(); i++) {
+      if (out.get(i) instanceof HttpContent) {
+        bytesOut += ((HttpContent) out.get(i)).content().readableBytes();
+      }
+    }
+
+    if (msg instanceof LastHttpContent) {
+      serviceMetrics.increment(Counter.CompressedResponses);
+      serviceMetrics.add(Counter.CompressionBytesSaved, bytesIn - bytesOut);
+      serviceMetrics.add(Counter.CompressionNanos, compressionNanos);
+
+      compressing = false;
+      bytesIn = 0L;
+      bytesOut = 0L;
+      compressionNanos = 0L;
+    }
+  }
+
+  private boolean isExcluded(final String contentType) {
+    if (excludedContentTypes.isEmpty() || contentType == null) {
+      return false;
+    }
+
+    final int parametersStart = contentType.indexOf(';');
+
+    return excludedContentTypes.contains(ContentType.fromString(
+        parametersStart < 0 ? contentType : contentType.substring(0, parametersStart)));
+  }
+}
@@ -0,0 +1,161 @@
+package org.granite.rest.service;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
+import org.granite.rest.model.PathTemplate;
+import org.granite.rest.model.RequestContext;
+import org.granite.rest.model.RequestHandler;
+
+/**
+ * Finds the RequestHandler for a request by walking a trie of path segments built once from the
+ * registered routes, so a lookup costs one step per path segment and allocates nothing. Literal
+ * segments win over variables, and both win over a handler registered by its root path, which
+ * takes its root and everything beneath it. The matched template is set on the RequestContext so
+ * handlers can read its path variables.
+ *
+ * <pre>
+ * new InboundRequestHandler(Router.builder()
+ *     .withHandler(itemsHandler)
+ *     .withRoute("/items/{id}/children", childrenHandler)
+ *     .build());
+ * </pre>
+ */
+public class Router implements Function<RequestContext, RequestHandler> {
+
+  private final Node root;
+
+  private Router(final Node root) {
+    this.root = root;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  @Override
+  public RequestHandler apply(final RequestContext requestContext) {
+    final Route route = find(root, requestContext.getRequestPath(), 0);
+
+    if (route == null) {
+      return null;
+    }
+
+    requestContext.setPathTemplate(route.template);
+
+    return route.handler;
+  }
+
+  private static Route find(final Node node, final List<String> requestPath, final int depth) {
+    if (depth == requestPath.size()) {
+      return node.exactRoute != null ? node.exactRoute : node.prefixRoute;
+    }
+
+    final Node literal = node.literals.get(requestPath.get(depth));
+
+    if (literal != null) {
+      final Route route = find(literal, requestPath, depth + 1);
+
+      if (route != null) {
+        return route;
+      }
+    }
+
+    if (node.variable != null) {
+      final Route route = find(node.variable, requestPath, depth + 1);
+
+      if (route != null) {
+        return route;
+      }
+    }
+
+    return node.prefixRoute;
+  }
+
+  public static class Builder {
+
+    private final Node root = new Node();
+
+    private Builder() {
+    }
+
+    // Routes the handler's root path and every path beneath it
+    public Builder withHandler(final RequestHandler handler) {
+      checkNotNull(handler, "handler");
+
+      final PathTemplate pathTemplate = PathTemplate.parse(
+          checkNotNull(handler.getRootPath(), "rootPath"));
+      final Node node = insert(pathTemplate);
+
+      checkArgument(node.prefixRoute == null, "Root path %s is already routed", pathTemplate);
+
+      node.prefixRoute = new Route(pathTemplate, handler);
+      return this;
+    }
+
+    // Routes paths matching the template exactly, e.g. /items/{id}/children
+    public Builder withRoute(final String template, final RequestHandler handler) {
+      checkNotNull(handler, "handler");
+
+      final PathTemplate pathTemplate = PathTemplate.parse(template);
+      final Node node = insert(pathTemplate);
+
+      checkArgument(node.exactRoute == null, "%s conflicts with %s",
+          pathTemplate, node.exactRoute);
+
+      node.exactRoute = new Route(pathTemplate, handler);
+      return this;
+    }
+
+    public Router build() {
+      return new Router(root);
+    }
+
+    private Node insert(final PathTemplate pathTemplate) {
+      Node node = root;
+
+      for (int i = 0; i < pathTemplate.getSegmentCount(); i++) {
+        if (pathTemplate.isVariable(i)) {
+          if (node.variable == null) {
+            node.variable = new Node();
+          }
+
+          node = node.variable;
+        } else {
+          node = node.literals.computeIfAbsent(pathTemplate.getLiteral(i), key -> new Node());
+        }
+      }
+
+      return node;
+    }
+  }
+
+  private static class Route {
+
+    private final PathTemplate template;
+    private final RequestHandler handler;
+
+    private Route(final PathTemplate template, final RequestHandler handler) {
+      this.template = template;
+      this.handler = handler;
+    }
+
+    @Override
+    public String toString() {
+      return template.toString();
+    }
+  }
+
+  // Only modified by the Builder, the Router reads it without locking once
+  // built
+  private static class Node {
+
+    private final HashMap<String, Node> literals = new HashMap<>();
+    private Node variable = null;
+    private Route exactRoute = null;
+    private Route prefixRoute = null;
+  }
+}